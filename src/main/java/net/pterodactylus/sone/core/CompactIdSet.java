@@ -0,0 +1,320 @@
+/*
+ * FreenetSone - CompactIdSet.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Memory-efficient set of IDs. IDs that are {@link UUID}s (such as the IDs of
+ * posts and replies) are stored as two {@code long}s in a sorted array; new
+ * IDs are collected in a small buffer that is merged into the array once it
+ * grows too large. All other IDs are stored as they are.
+ * <p>
+ * The set is thread-safe. Removing IDs from the sorted array copies the
+ * array, so IDs should be removed in batches using
+ * {@link #removeAll(Collection)}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class CompactIdSet extends AbstractSet<String> {
+
+	/** The minimum number of IDs in the buffer before it is merged. */
+	private static final int MINIMUM_BUFFER_SIZE = 1024;
+
+	/** The sorted UUIDs, as pairs of most and least significant bits. */
+	/* arrays are never modified once they are assigned. */
+	private long[] sortedIds = new long[0];
+
+	/** Recently added UUIDs that have not been merged yet. */
+	private final Set<UUID> bufferedIds = new HashSet<UUID>();
+
+	/** All IDs that are not UUIDs. */
+	private final Set<String> otherIds = new HashSet<String>();
+
+	//
+	// SET METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized boolean contains(Object object) {
+		if (!(object instanceof String)) {
+			return false;
+		}
+		UUID uuid = toUuid((String) object);
+		if (uuid == null) {
+			return otherIds.contains(object);
+		}
+		return bufferedIds.contains(uuid) || (indexOf(sortedIds, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized boolean add(String id) {
+		UUID uuid = toUuid(id);
+		if (uuid == null) {
+			return otherIds.add(id);
+		}
+		if (indexOf(sortedIds, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0) {
+			return false;
+		}
+		if (!bufferedIds.add(uuid)) {
+			return false;
+		}
+		if (bufferedIds.size() >= Math.max(MINIMUM_BUFFER_SIZE, sortedIds.length / 16)) {
+			mergeBuffer();
+		}
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized boolean remove(Object object) {
+		return removeAll(Collections.singleton(object));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized boolean removeAll(Collection<?> ids) {
+		boolean removed = false;
+		BitSet removedIndices = new BitSet();
+		for (Object id : ids) {
+			if (!(id instanceof String)) {
+				continue;
+			}
+			UUID uuid = toUuid((String) id);
+			if (uuid == null) {
+				removed |= otherIds.remove(id);
+				continue;
+			}
+			if (bufferedIds.remove(uuid)) {
+				removed = true;
+				continue;
+			}
+			int index = indexOf(sortedIds, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			if (index >= 0) {
+				removedIndices.set(index);
+			}
+		}
+		if (!removedIndices.isEmpty()) {
+			long[] oldIds = sortedIds;
+			long[] newIds = new long[oldIds.length - removedIndices.cardinality() * 2];
+			int newIndex = 0;
+			for (int oldIndex = 0; oldIndex < (oldIds.length / 2); ++oldIndex) {
+				if (!removedIndices.get(oldIndex)) {
+					newIds[newIndex++] = oldIds[oldIndex * 2];
+					newIds[newIndex++] = oldIds[oldIndex * 2 + 1];
+				}
+			}
+			sortedIds = newIds;
+			removed = true;
+		}
+		return removed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized int size() {
+		return (sortedIds.length / 2) + bufferedIds.size() + otherIds.size();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void clear() {
+		sortedIds = new long[0];
+		bufferedIds.clear();
+		otherIds.clear();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The returned iterator works on a snapshot of this set and does not
+	 * support {@link Iterator#remove()}; use {@link #remove(Object)} instead.
+	 */
+	@Override
+	public synchronized Iterator<String> iterator() {
+		mergeBuffer();
+		final long[] ids = sortedIds;
+		final List<String> otherIds = new ArrayList<String>(this.otherIds);
+		return new Iterator<String>() {
+
+			private int index = 0;
+
+			@Override
+			public boolean hasNext() {
+				return index < ((ids.length / 2) + otherIds.size());
+			}
+
+			@Override
+			public String next() {
+				if (!hasNext()) {
+					throw new NoSuchElementException();
+				}
+				int currentIndex = index++;
+				if (currentIndex < (ids.length / 2)) {
+					return new UUID(ids[currentIndex * 2], ids[currentIndex * 2 + 1]).toString();
+				}
+				return otherIds.get(currentIndex - (ids.length / 2));
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("IDs can not be removed.");
+			}
+
+		};
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Merges the buffered UUIDs into the sorted array.
+	 */
+	private void mergeBuffer() {
+		if (bufferedIds.isEmpty()) {
+			return;
+		}
+		List<UUID> newIds = new ArrayList<UUID>(bufferedIds);
+		Collections.sort(newIds);
+		long[] oldIds = sortedIds;
+		long[] mergedIds = new long[oldIds.length + newIds.size() * 2];
+		int oldIndex = 0;
+		int newIndex = 0;
+		int mergedIndex = 0;
+		while ((oldIndex < oldIds.length) || (newIndex < newIds.size())) {
+			boolean takeOld;
+			if (oldIndex >= oldIds.length) {
+				takeOld = false;
+			} else if (newIndex >= newIds.size()) {
+				takeOld = true;
+			} else {
+				UUID newId = newIds.get(newIndex);
+				takeOld = compare(oldIds[oldIndex], oldIds[oldIndex + 1], newId.getMostSignificantBits(), newId.getLeastSignificantBits()) < 0;
+			}
+			if (takeOld) {
+				mergedIds[mergedIndex++] = oldIds[oldIndex++];
+				mergedIds[mergedIndex++] = oldIds[oldIndex++];
+			} else {
+				UUID newId = newIds.get(newIndex++);
+				mergedIds[mergedIndex++] = newId.getMostSignificantBits();
+				mergedIds[mergedIndex++] = newId.getLeastSignificantBits();
+			}
+		}
+		sortedIds = mergedIds;
+		bufferedIds.clear();
+	}
+
+	/**
+	 * Searches the given sorted ID pairs for the given UUID.
+	 *
+	 * @param ids
+	 *            The sorted ID pairs
+	 * @param mostSignificantBits
+	 *            The most significant bits of the UUID
+	 * @param leastSignificantBits
+	 *            The least significant bits of the UUID
+	 * @return The index of the pair, or {@code -1} if the UUID was not found
+	 */
+	private static int indexOf(long[] ids, long mostSignificantBits, long leastSignificantBits) {
+		int low = 0;
+		int high = (ids.length / 2) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int comparison = compare(ids[middle * 2], ids[middle * 2 + 1], mostSignificantBits, leastSignificantBits);
+			if (comparison < 0) {
+				low = middle + 1;
+			} else if (comparison > 0) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares two UUIDs given as pairs of longs, in the same order as
+	 * {@link UUID#compareTo(UUID)}.
+	 *
+	 * @param leftMostSignificantBits
+	 *            The most significant bits of the left UUID
+	 * @param leftLeastSignificantBits
+	 *            The least significant bits of the left UUID
+	 * @param rightMostSignificantBits
+	 *            The most significant bits of the right UUID
+	 * @param rightLeastSignificantBits
+	 *            The least significant bits of the right UUID
+	 * @return A negative number, {@code 0}, or a positive number if the left
+	 *         UUID is smaller than, equal to, or greater than the right UUID
+	 */
+	private static int compare(long leftMostSignificantBits, long leftLeastSignificantBits, long rightMostSignificantBits, long rightLeastSignificantBits) {
+		if (leftMostSignificantBits != rightMostSignificantBits) {
+			return (leftMostSignificantBits < rightMostSignificantBits) ? -1 : 1;
+		}
+		if (leftLeastSignificantBits != rightLeastSignificantBits) {
+			return (leftLeastSignificantBits < rightLeastSignificantBits) ? -1 : 1;
+		}
+		return 0;
+	}
+
+	/**
+	 * Parses the given ID as a UUID. Only IDs that are exactly the string
+	 * form of a UUID are accepted so that they can be restored unchanged.
+	 *
+	 * @param id
+	 *            The ID to parse
+	 * @return The UUID, or {@code null} if the ID is not a UUID
+	 */
+	private static UUID toUuid(String id) {
+		if ((id == null) || (id.length() != 36)) {
+			return null;
+		}
+		try {
+			UUID uuid = UUID.fromString(id);
+			return uuid.toString().equals(id) ? uuid : null;
+		} catch (IllegalArgumentException iae1) {
+			return null;
+		}
+	}
+
+}
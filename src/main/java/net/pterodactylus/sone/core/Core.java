@@ -17,14 +17,26 @@
 
 package net.pterodactylus.sone.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -82,6 +94,15 @@ public class Core implements IdentityListener, UpdateListener {
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(Core.class);
 
+	/** The directory the data of Sone is stored in. */
+	private static final File DATA_DIRECTORY = new File("sone-data");
+
+	/** The maximum number of post and reply placeholders to keep. */
+	private static final int MAXIMUM_PLACEHOLDERS = 1000;
+
+	/** The maximum number of local Sones that are loaded in parallel. */
+	private static final int LOCAL_SONE_LOADERS = 4;
+
 	/** The options. */
 	private final Options options = new Options();
 
@@ -91,9 +112,6 @@ public class Core implements IdentityListener, UpdateListener {
 	/** The configuration. */
 	private Configuration configuration;
 
-	/** Whether we’re currently saving the configuration. */
-	private boolean storingConfiguration = false;
-
 	/** The identity manager. */
 	private final IdentityManager identityManager;
 
@@ -103,57 +121,203 @@ public class Core implements IdentityListener, UpdateListener {
 	/** The Sone downloader. */
 	private final SoneDownloader soneDownloader;
 
+	/** The save scheduler. */
+	private final SaveScheduler saveScheduler;
+
 	/** The update checker. */
 	private final UpdateChecker updateChecker;
 
 	/** Whether the core has been stopped. */
 	private volatile boolean stopped;
 
+	/*
+	 * Lock order: the monitor of a Sone is acquired before the configuration,
+	 * and both are acquired before any of the leaf locks, i.e. localSones,
+	 * newSones, newPosts, newReplies, postReplies, postLikes, replyLikes, the
+	 * Sone store, and the monitor of a Timeline. Leaf locks are never nested,
+	 * except that the read states are acquired while holding newPosts or
+	 * newReplies. The registries themselves are concurrent and need no
+	 * locking for single operations.
+	 */
+
 	/** The Sones’ statuses. */
-	/* synchronize access on itself. */
-	private final Map<Sone, SoneStatus> soneStatuses = new HashMap<Sone, SoneStatus>();
+	private final Map<Sone, SoneStatus> soneStatuses = new ConcurrentHashMap<Sone, SoneStatus>();
 
 	/** Locked local Sones. */
-	/* synchronize on itself. */
-	private final Set<Sone> lockedSones = new HashSet<Sone>();
+	private final Set<Sone> lockedSones = Collections.newSetFromMap(new ConcurrentHashMap<Sone, Boolean>());
+
+	/** The executor that loads local Sones. */
+	private final ThreadPoolExecutor localSoneLoader = new ThreadPoolExecutor(LOCAL_SONE_LOADERS, LOCAL_SONE_LOADERS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, "Sone Loader");
+		}
+
+	});
 
 	/** Sone inserters. */
-	/* synchronize access on this on localSones. */
-	private final Map<Sone, SoneInserter> soneInserters = new HashMap<Sone, SoneInserter>();
+	private final Map<Sone, SoneInserter> soneInserters = new ConcurrentHashMap<Sone, SoneInserter>();
+
+	/** The running Sone rescuers. */
+	/* synchronize access on this. */
+	private final Set<SoneRescuer> soneRescuers = new HashSet<SoneRescuer>();
 
 	/** All local Sones. */
-	/* synchronize access on this on itself. */
-	private Map<String, Sone> localSones = new HashMap<String, Sone>();
+	/* synchronize adding and removing local Sones on this. */
+	private final ConcurrentMap<String, Sone> localSones = new ConcurrentHashMap<String, Sone>();
 
 	/** All remote Sones. */
-	/* synchronize access on this on itself. */
-	private Map<String, Sone> remoteSones = new HashMap<String, Sone>();
+	private final ConcurrentMap<String, Sone> remoteSones = new ConcurrentHashMap<String, Sone>();
 
 	/** All new Sones. */
-	private Set<String> newSones = new HashSet<String>();
+	/* synchronize compound operations with knownSones on this. */
+	private final Set<String> newSones = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** The journal for known Sones and the read states. */
+	private final Journal knownStateJournal = new Journal(DATA_DIRECTORY, "known");
 
 	/** All known Sones. */
-	/* synchronize access on {@link #newSones}. */
-	private Set<String> knownSones = new HashSet<String>();
+	private final Set<String> knownSones = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
 	/** All posts. */
-	private Map<String, Post> posts = new HashMap<String, Post>();
+	private final ConcurrentMap<String, Post> posts = new ConcurrentHashMap<String, Post>();
 
 	/** All new posts. */
-	private Set<String> newPosts = new HashSet<String>();
+	/* synchronize compound operations with postReadState on this. */
+	private final Set<String> newPosts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** The read state of all posts. */
+	private final ReadState<Post> postReadState = new ReadState<Post>() {
+
+		@Override
+		protected String getId(Post post) {
+			return post.getId();
+		}
+
+		@Override
+		protected String getSoneId(Post post) {
+			return (post.getSone() == null) ? null : post.getSone().getId();
+		}
+
+		@Override
+		protected long getTime(Post post) {
+			return post.getTime();
+		}
+
+		@Override
+		protected void knownIdAdded(String soneId, String id) {
+			knownStateJournal.put("KnownPosts/" + id, soneId);
+		}
+
+		@Override
+		protected void knownIdsRemoved(Collection<String> ids) {
+			for (String id : ids) {
+				knownStateJournal.remove("KnownPosts/" + id);
+			}
+		}
+
+		@Override
+		protected void readTimeChanged(String soneId, long readTime) {
+			knownStateJournal.put("ReadTimes/Posts/" + soneId, String.valueOf(readTime));
+		}
+
+		@Override
+		protected void readTimeRemoved(String soneId) {
+			knownStateJournal.remove("ReadTimes/Posts/" + soneId);
+		}
+
+	};
+
+	/** The storage for the data of local Sones. */
+	private final SoneStore soneStore = new SoneStore(DATA_DIRECTORY);
 
-	/** All known posts. */
-	/* synchronize access on {@link #newPosts}. */
-	private Set<String> knownPosts = new HashSet<String>();
+	/** The store for the last downloaded state of remote Sones. */
+	private final SoneStore remoteSoneStore = new SoneStore(new File(DATA_DIRECTORY, "remote"));
+
+	/** Placeholders for posts that are referenced but not yet known. */
+	private final Placeholders<Post> postPlaceholders = new Placeholders<Post>(MAXIMUM_PLACEHOLDERS) {
+
+		@Override
+		protected Post createPlaceholder(String id) {
+			return new Post(id);
+		}
+
+	};
 
 	/** All replies. */
-	private Map<String, Reply> replies = new HashMap<String, Reply>();
+	private final ConcurrentMap<String, Reply> replies = new ConcurrentHashMap<String, Reply>();
 
 	/** All new replies. */
-	private Set<String> newReplies = new HashSet<String>();
+	/* synchronize compound operations with replyReadState on this. */
+	private final Set<String> newReplies = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/** The read state of all replies. */
+	private final ReadState<Reply> replyReadState = new ReadState<Reply>() {
+
+		@Override
+		protected String getId(Reply reply) {
+			return reply.getId();
+		}
+
+		@Override
+		protected String getSoneId(Reply reply) {
+			return (reply.getSone() == null) ? null : reply.getSone().getId();
+		}
+
+		@Override
+		protected long getTime(Reply reply) {
+			return reply.getTime();
+		}
+
+		@Override
+		protected void knownIdAdded(String soneId, String id) {
+			knownStateJournal.put("KnownReplies/" + id, soneId);
+		}
+
+		@Override
+		protected void knownIdsRemoved(Collection<String> ids) {
+			for (String id : ids) {
+				knownStateJournal.remove("KnownReplies/" + id);
+			}
+		}
 
-	/** All known replies. */
-	private Set<String> knownReplies = new HashSet<String>();
+		@Override
+		protected void readTimeChanged(String soneId, long readTime) {
+			knownStateJournal.put("ReadTimes/Replies/" + soneId, String.valueOf(readTime));
+		}
+
+		@Override
+		protected void readTimeRemoved(String soneId) {
+			knownStateJournal.remove("ReadTimes/Replies/" + soneId);
+		}
+
+	};
+
+	/** Placeholders for replies that are referenced but not yet known. */
+	private final Placeholders<Reply> replyPlaceholders = new Placeholders<Reply>(MAXIMUM_PLACEHOLDERS) {
+
+		@Override
+		protected Reply createPlaceholder(String id) {
+			return new Reply(id);
+		}
+
+	};
+
+	/** All replies, indexed by the ID of the post they refer to. */
+	/* synchronize access on itself. */
+	private final Map<String, List<Reply>> postReplies = new HashMap<String, List<Reply>>();
+
+	/** The Sones liking a post, indexed by the ID of the post. */
+	/* synchronize access on itself. */
+	private final Map<String, Set<Sone>> postLikes = new HashMap<String, Set<Sone>>();
+
+	/** The Sones liking a reply, indexed by the ID of the reply. */
+	/* synchronize access on itself. */
+	private final Map<String, Set<Sone>> replyLikes = new HashMap<String, Set<Sone>>();
+
+	/** The timelines of all local Sones, indexed by the ID of the Sone. */
+	private final Map<String, Timeline> timelines = new ConcurrentHashMap<String, Timeline>();
 
 	/** Trusted identities, sorted by own identities. */
 	private Map<OwnIdentity, Set<Identity>> trustedIdentities = Collections.synchronizedMap(new HashMap<OwnIdentity, Set<Identity>>());
@@ -173,7 +337,9 @@ public class Core implements IdentityListener, UpdateListener {
 		this.freenetInterface = freenetInterface;
 		this.identityManager = identityManager;
 		this.soneDownloader = new SoneDownloader(this, freenetInterface);
+		this.saveScheduler = new SaveScheduler(this);
 		this.updateChecker = new UpdateChecker(freenetInterface);
+		localSoneLoader.allowCoreThreadTimeOut(true);
 	}
 
 	//
@@ -261,9 +427,40 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The status of the Sone
 	 */
 	public SoneStatus getSoneStatus(Sone sone) {
-		synchronized (soneStatuses) {
-			return soneStatuses.get(sone);
-		}
+		return soneStatuses.get(sone);
+	}
+
+	/**
+	 * Returns the health record of the given Sone, i.e. the failures that
+	 * occured while fetching it.
+	 *
+	 * @param sone
+	 *            The Sone to get the health record for
+	 * @return The health record of the Sone, or {@code null} if the Sone has
+	 *         not yet been fetched
+	 */
+	public SoneHealth getSoneHealth(Sone sone) {
+		return soneDownloader.getSoneHealth(sone);
+	}
+
+	/**
+	 * Returns the number of Sones that were not fetched because they were
+	 * larger than the maximum size.
+	 *
+	 * @return The number of oversized Sones
+	 */
+	public int getOversizedSoneCount() {
+		return soneDownloader.getOversizedSoneCount();
+	}
+
+	/**
+	 * Returns the number of Sones that were rejected because they exceeded
+	 * the limits of the Sone parser.
+	 *
+	 * @return The number of Sones that exceeded the parser limits
+	 */
+	public int getLimitExceededSoneCount() {
+		return soneDownloader.getLimitExceededSoneCount();
 	}
 
 	/**
@@ -275,9 +472,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 *            The status to set
 	 */
 	public void setSoneStatus(Sone sone, SoneStatus soneStatus) {
-		synchronized (soneStatuses) {
-			soneStatuses.put(sone, soneStatus);
-		}
+		soneStatuses.put(sone, soneStatus);
 	}
 
 	/**
@@ -288,9 +483,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return {@code true} if the Sone is locked, {@code false} if it is not
 	 */
 	public boolean isLocked(Sone sone) {
-		synchronized (lockedSones) {
-			return lockedSones.contains(sone);
-		}
+		return lockedSones.contains(sone);
 	}
 
 	/**
@@ -358,9 +551,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return {@code true} if the given Sone is local, {@code false} otherwise
 	 */
 	public boolean isLocalSone(Sone sone) {
-		synchronized (localSones) {
-			return localSones.containsKey(sone.getId());
-		}
+		return localSones.containsKey(sone.getId());
 	}
 
 	/**
@@ -372,9 +563,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 *         otherwise
 	 */
 	public boolean isLocalSone(String id) {
-		synchronized (localSones) {
-			return localSones.containsKey(id);
-		}
+		return localSones.containsKey(id);
 	}
 
 	/**
@@ -383,9 +572,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return All local Sones
 	 */
 	public Set<Sone> getLocalSones() {
-		synchronized (localSones) {
-			return new HashSet<Sone>(localSones.values());
-		}
+		return new HashSet<Sone>(localSones.values());
 	}
 
 	/**
@@ -410,14 +597,15 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The Sone with the given ID, or {@code null}
 	 */
 	public Sone getLocalSone(String id, boolean create) {
-		synchronized (localSones) {
-			Sone sone = localSones.get(id);
-			if ((sone == null) && create) {
-				sone = new Sone(id);
-				localSones.put(id, sone);
+		Sone sone = localSones.get(id);
+		if ((sone == null) && create) {
+			Sone newSone = new Sone(id);
+			sone = localSones.putIfAbsent(id, newSone);
+			if (sone == null) {
+				sone = newSone;
 			}
-			return sone;
 		}
+		return sone;
 	}
 
 	/**
@@ -426,9 +614,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return All remote Sones
 	 */
 	public Set<Sone> getRemoteSones() {
-		synchronized (remoteSones) {
-			return new HashSet<Sone>(remoteSones.values());
-		}
+		return new HashSet<Sone>(remoteSones.values());
 	}
 
 	/**
@@ -453,14 +639,15 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The Sone with the given ID
 	 */
 	public Sone getRemoteSone(String id, boolean create) {
-		synchronized (remoteSones) {
-			Sone sone = remoteSones.get(id);
-			if ((sone == null) && create) {
-				sone = new Sone(id);
-				remoteSones.put(id, sone);
+		Sone sone = remoteSones.get(id);
+		if ((sone == null) && create) {
+			Sone newSone = new Sone(id);
+			sone = remoteSones.putIfAbsent(id, newSone);
+			if (sone == null) {
+				sone = newSone;
 			}
-			return sone;
 		}
+		return sone;
 	}
 
 	/**
@@ -472,9 +659,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 *         otherwise
 	 */
 	public boolean isRemoteSone(Sone sone) {
-		synchronized (remoteSones) {
-			return remoteSones.containsKey(sone.getId());
-		}
+		return remoteSones.containsKey(sone.getId());
 	}
 
 	/**
@@ -486,9 +671,7 @@ public class Core implements IdentityListener, UpdateListener {
 	 *         {@code false} otherwise
 	 */
 	public boolean isRemoteSone(String id) {
-		synchronized (remoteSones) {
-			return remoteSones.containsKey(id);
-		}
+		return remoteSones.containsKey(id);
 	}
 
 	/**
@@ -501,14 +684,15 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return {@code true} if the given Sone is new, false otherwise
 	 */
 	public boolean isNewSone(Sone sone) {
+		boolean isNew;
 		synchronized (newSones) {
-			boolean isNew = !knownSones.contains(sone.getId()) && newSones.remove(sone.getId());
-			knownSones.add(sone.getId());
-			if (isNew) {
-				coreListenerManager.fireMarkSoneKnown(sone);
-			}
-			return isNew;
+			isNew = !knownSones.contains(sone.getId()) && newSones.remove(sone.getId());
+			addKnownSone(sone.getId());
+		}
+		if (isNew) {
+			coreListenerManager.fireMarkSoneKnown(sone);
 		}
+		return isNew;
 	}
 
 	/**
@@ -548,7 +732,9 @@ public class Core implements IdentityListener, UpdateListener {
 	}
 
 	/**
-	 * Returns the post with the given ID, optionally creating a new post.
+	 * Returns the post with the given ID, optionally creating a new post. A
+	 * newly created post is only a placeholder that is not stored with the
+	 * other posts until a Sone delivers its content.
 	 *
 	 * @param postId
 	 *            The ID of the post to get
@@ -558,14 +744,11 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The post, or {@code null} if there is no such post
 	 */
 	public Post getPost(String postId, boolean create) {
-		synchronized (posts) {
-			Post post = posts.get(postId);
-			if ((post == null) && create) {
-				post = new Post(postId);
-				posts.put(postId, post);
-			}
-			return post;
+		Post post = posts.get(postId);
+		if ((post == null) && create) {
+			post = postPlaceholders.get(postId);
 		}
+		return post;
 	}
 
 	/**
@@ -595,16 +778,17 @@ public class Core implements IdentityListener, UpdateListener {
 	 *         otherwise
 	 */
 	public boolean isNewPost(String postId, boolean markAsKnown) {
+		boolean isNew;
 		synchronized (newPosts) {
-			boolean isNew = !knownPosts.contains(postId) && newPosts.contains(postId);
-			if (markAsKnown) {
-				Post post = getPost(postId, false);
-				if (post != null) {
-					markPostKnown(post);
-				}
+			isNew = newPosts.contains(postId);
+		}
+		if (markAsKnown) {
+			Post post = getPost(postId, false);
+			if (post != null) {
+				markPostKnown(post);
 			}
-			return isNew;
 		}
+		return isNew;
 	}
 
 	/**
@@ -622,7 +806,9 @@ public class Core implements IdentityListener, UpdateListener {
 	/**
 	 * Returns the reply with the given ID. If there is no reply with the given
 	 * ID yet, a new one is created, unless {@code create} is false in which
-	 * case {@code null} is returned.
+	 * case {@code null} is returned. A newly created reply is only a
+	 * placeholder that is not stored with the other replies until a Sone
+	 * delivers its content.
 	 *
 	 * @param replyId
 	 *            The ID of the reply to get
@@ -632,14 +818,11 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The reply, or {@code null} if there is no such reply
 	 */
 	public Reply getReply(String replyId, boolean create) {
-		synchronized (replies) {
-			Reply reply = replies.get(replyId);
-			if (create && (reply == null)) {
-				reply = new Reply(replyId);
-				replies.put(replyId, reply);
-			}
-			return reply;
+		Reply reply = replies.get(replyId);
+		if (create && (reply == null)) {
+			reply = replyPlaceholders.get(replyId);
 		}
+		return reply;
 	}
 
 	/**
@@ -650,17 +833,13 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return All replies for the given post
 	 */
 	public List<Reply> getReplies(Post post) {
-		Set<Sone> sones = getSones();
-		List<Reply> replies = new ArrayList<Reply>();
-		for (Sone sone : sones) {
-			for (Reply reply : sone.getReplies()) {
-				if (reply.getPost().equals(post)) {
-					replies.add(reply);
-				}
+		synchronized (postReplies) {
+			List<Reply> replies = postReplies.get(post.getId());
+			if (replies == null) {
+				return new ArrayList<Reply>();
 			}
+			return new ArrayList<Reply>(replies);
 		}
-		Collections.sort(replies, Reply.TIME_COMPARATOR);
-		return replies;
 	}
 
 	/**
@@ -687,16 +866,17 @@ public class Core implements IdentityListener, UpdateListener {
 	 *         otherwise
 	 */
 	public boolean isNewReply(String replyId, boolean markAsKnown) {
+		boolean isNew;
 		synchronized (newReplies) {
-			boolean isNew = !knownReplies.contains(replyId) && newReplies.contains(replyId);
-			if (markAsKnown) {
-				Reply reply = getReply(replyId, false);
-				if (reply != null) {
-					markReplyKnown(reply);
-				}
+			isNew = newReplies.contains(replyId);
+		}
+		if (markAsKnown) {
+			Reply reply = getReply(replyId, false);
+			if (reply != null) {
+				markReplyKnown(reply);
 			}
-			return isNew;
 		}
+		return isNew;
 	}
 
 	/**
@@ -707,13 +887,18 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The Sones that like the given post
 	 */
 	public Set<Sone> getLikes(Post post) {
-		Set<Sone> sones = new HashSet<Sone>();
-		for (Sone sone : getSones()) {
-			if (sone.getLikedPostIds().contains(post.getId())) {
-				sones.add(sone);
-			}
-		}
-		return sones;
+		return getLikes(postLikes, post.getId());
+	}
+
+	/**
+	 * Returns the number of Sones that have liked the given post.
+	 *
+	 * @param post
+	 *            The post to get the number of likes for
+	 * @return The number of Sones that like the given post
+	 */
+	public int getLikeCount(Post post) {
+		return getLikeCount(postLikes, post.getId());
 	}
 
 	/**
@@ -724,13 +909,36 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The Sones that like the given reply
 	 */
 	public Set<Sone> getLikes(Reply reply) {
-		Set<Sone> sones = new HashSet<Sone>();
-		for (Sone sone : getSones()) {
-			if (sone.getLikedReplyIds().contains(reply.getId())) {
-				sones.add(sone);
-			}
+		return getLikes(replyLikes, reply.getId());
+	}
+
+	/**
+	 * Returns the number of Sones that have liked the given reply.
+	 *
+	 * @param reply
+	 *            The reply to get the number of likes for
+	 * @return The number of Sones that like the given reply
+	 */
+	public int getLikeCount(Reply reply) {
+		return getLikeCount(replyLikes, reply.getId());
+	}
+
+	/**
+	 * Returns the timeline of the given local Sone, i.e. all posts of the Sone
+	 * itself, of all Sones it follows, and all posts directed at it, sorted by
+	 * time, newest first.
+	 *
+	 * @param sone
+	 *            The local Sone to get the timeline for
+	 * @return The timeline of the Sone, or an empty list if the Sone is not a
+	 *         local Sone
+	 */
+	public List<Post> getTimeline(Sone sone) {
+		Timeline timeline = timelines.get(sone.getId());
+		if (timeline == null) {
+			return Collections.emptyList();
 		}
-		return sones;
+		return timeline.getPosts();
 	}
 
 	//
@@ -746,10 +954,8 @@ public class Core implements IdentityListener, UpdateListener {
 	 *            The sone to lock
 	 */
 	public void lockSone(Sone sone) {
-		synchronized (lockedSones) {
-			if (lockedSones.add(sone)) {
-				coreListenerManager.fireSoneLocked(sone);
-			}
+		if (lockedSones.add(sone)) {
+			coreListenerManager.fireSoneLocked(sone);
 		}
 	}
 
@@ -761,10 +967,8 @@ public class Core implements IdentityListener, UpdateListener {
 	 *            The sone to unlock
 	 */
 	public void unlockSone(Sone sone) {
-		synchronized (lockedSones) {
-			if (lockedSones.remove(sone)) {
-				coreListenerManager.fireSoneUnlocked(sone);
-			}
+		if (lockedSones.remove(sone)) {
+			coreListenerManager.fireSoneUnlocked(sone);
 		}
 	}
 
@@ -777,22 +981,23 @@ public class Core implements IdentityListener, UpdateListener {
 	 * @return The added (or already existing) Sone
 	 */
 	public Sone addLocalSone(String id) {
-		synchronized (localSones) {
-			if (localSones.containsKey(id)) {
-				logger.log(Level.FINE, "Tried to add known local Sone: %s", id);
-				return localSones.get(id);
-			}
-			OwnIdentity ownIdentity = identityManager.getOwnIdentity(id);
-			if (ownIdentity == null) {
-				logger.log(Level.INFO, "Invalid Sone ID: %s", id);
-				return null;
-			}
-			return addLocalSone(ownIdentity);
+		Sone sone = getLocalSone(id, false);
+		if (sone != null) {
+			logger.log(Level.FINE, "Tried to add known local Sone: %s", id);
+			return sone;
+		}
+		OwnIdentity ownIdentity = identityManager.getOwnIdentity(id);
+		if (ownIdentity == null) {
+			logger.log(Level.INFO, "Invalid Sone ID: %s", id);
+			return null;
 		}
+		return addLocalSone(ownIdentity);
 	}
 
 	/**
-	 * Adds a local Sone from the given own identity.
+	 * Adds a local Sone from the given own identity. The stored data of the
+	 * Sone is loaded before the Sone is registered so that other Sones can be
+	 * used and loaded in the meantime.
 	 *
 	 * @param ownIdentity
 	 *            The own identity to create a Sone from
@@ -803,52 +1008,81 @@ public class Core implements IdentityListener, UpdateListener {
 			logger.log(Level.WARNING, "Given OwnIdentity is null!");
 			return null;
 		}
-		synchronized (localSones) {
-			final Sone sone;
-			try {
-				sone = getLocalSone(ownIdentity.getId()).setIdentity(ownIdentity).setInsertUri(new FreenetURI(ownIdentity.getInsertUri())).setRequestUri(new FreenetURI(ownIdentity.getRequestUri()));
-			} catch (MalformedURLException mue1) {
-				logger.log(Level.SEVERE, "Could not convert the Identity’s URIs to Freenet URIs: " + ownIdentity.getInsertUri() + ", " + ownIdentity.getRequestUri(), mue1);
-				return null;
+		Sone existingSone = getLocalSone(ownIdentity.getId(), false);
+		if (existingSone != null) {
+			logger.log(Level.FINE, "Tried to add known local Sone: %s", existingSone);
+			return existingSone;
+		}
+		final Sone sone;
+		try {
+			sone = new Sone(ownIdentity.getId()).setIdentity(ownIdentity).setInsertUri(new FreenetURI(ownIdentity.getInsertUri())).setRequestUri(new FreenetURI(ownIdentity.getRequestUri()));
+		} catch (MalformedURLException mue1) {
+			logger.log(Level.SEVERE, "Could not convert the Identity’s URIs to Freenet URIs: " + ownIdentity.getInsertUri() + ", " + ownIdentity.getRequestUri(), mue1);
+			return null;
+		}
+		sone.setLatestEdition(Numbers.safeParseLong(ownIdentity.getProperty("Sone.LatestEdition"), (long) 0));
+		sone.setClient(new Client("Sone", SonePlugin.VERSION.toString()));
+
+		/* read the stored Sone without holding any locks. */
+		long loadStart = System.currentTimeMillis();
+		Map<String, String> values = loadSoneValues(sone);
+		Sone storedSone = (values != null) ? parseStoredSone(sone, values) : null;
+
+		final SoneInserter soneInserter = new SoneInserter(this, freenetInterface, sone);
+		synchronized (sone) {
+			synchronized (localSones) {
+				existingSone = localSones.putIfAbsent(ownIdentity.getId(), sone);
+				if (existingSone != null) {
+					logger.log(Level.FINE, "Local Sone %s was added concurrently.", existingSone);
+					return existingSone;
+				}
+				soneInserters.put(sone, soneInserter);
 			}
-			sone.setLatestEdition(Numbers.safeParseLong(ownIdentity.getProperty("Sone.LatestEdition"), (long) 0));
-			sone.setClient(new Client("Sone", SonePlugin.VERSION.toString()));
-			/* TODO - load posts ’n stuff */
-			localSones.put(ownIdentity.getId(), sone);
-			final SoneInserter soneInserter = new SoneInserter(this, freenetInterface, sone);
-			soneInserters.put(sone, soneInserter);
 			setSoneStatus(sone, SoneStatus.idle);
-			loadSone(sone);
-			if (!isSoneRescueMode()) {
-				soneInserter.start();
+			if (storedSone != null) {
+				applyStoredSone(sone, storedSone, values);
+			} else {
+				rebuildTimeline(sone);
 			}
-			new Thread(new Runnable() {
+		}
+		logger.log(Level.INFO, "Loaded Sone %s in %d ms.", new Object[] { sone, System.currentTimeMillis() - loadStart });
+		if (!isSoneRescueMode()) {
+			soneInserter.start();
+			soneDownloader.scheduleFetch(sone);
+			return sone;
+		}
+		new Thread(new Runnable() {
 
-				@Override
-				@SuppressWarnings("synthetic-access")
-				public void run() {
-					if (!isSoneRescueMode()) {
-						soneDownloader.fetchSone(sone);
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				logger.log(Level.INFO, "Trying to restore Sone from Freenet…");
+				coreListenerManager.fireRescuingSone(sone);
+				lockSone(sone);
+				SoneRescuer soneRescuer = new SoneRescuer(Core.this, soneDownloader, sone, new File(DATA_DIRECTORY, "rescue"), options.getIntegerOption("SoneRescueDepth").get(), options.getIntegerOption("SoneRescueIdleEditions").get());
+				synchronized (soneRescuers) {
+					if (stopped) {
+						return;
+					}
+					soneRescuers.add(soneRescuer);
+				}
+				try {
+					if (!soneRescuer.rescue()) {
 						return;
 					}
-					logger.log(Level.INFO, "Trying to restore Sone from Freenet…");
-					coreListenerManager.fireRescuingSone(sone);
-					lockSone(sone);
-					long edition = sone.getLatestEdition();
-					while (!stopped && (edition >= 0) && isSoneRescueMode()) {
-						logger.log(Level.FINE, "Downloading edition " + edition + "…");
-						soneDownloader.fetchSone(sone, sone.getRequestUri().setKeyType("SSK").setDocName("Sone-" + edition));
-						--edition;
+				} finally {
+					synchronized (soneRescuers) {
+						soneRescuers.remove(soneRescuer);
 					}
-					logger.log(Level.INFO, "Finished restoring Sone from Freenet, starting Inserter…");
-					saveSone(sone);
-					coreListenerManager.fireRescuedSone(sone);
-					soneInserter.start();
 				}
+				logger.log(Level.INFO, "Finished restoring Sone from Freenet, starting Inserter…");
+				saveSone(sone);
+				coreListenerManager.fireRescuedSone(sone);
+				soneInserter.start();
+			}
 
-			}, "Sone Downloader").start();
-			return sone;
-		}
+		}, "Sone Downloader").start();
+		return sone;
 	}
 
 	/**
@@ -881,9 +1115,13 @@ public class Core implements IdentityListener, UpdateListener {
 			logger.log(Level.WARNING, "Given Identity is null!");
 			return null;
 		}
-		synchronized (remoteSones) {
-			final Sone sone = getRemoteSone(identity.getId()).setIdentity(identity);
-			boolean newSone = sone.getRequestUri() == null;
+		final Sone sone = getRemoteSone(identity.getId());
+		/* loading the cached Sone reads from disk, do not hold the lock. */
+		Sone cachedSone = (sone.getTime() == 0) ? loadRemoteSone(sone) : null;
+		boolean newSone;
+		synchronized (sone) {
+			sone.setIdentity(identity);
+			newSone = sone.getRequestUri() == null;
 			sone.setRequestUri(getSoneUri(identity.getRequestUri()));
 			sone.setLatestEdition(Numbers.safeParseLong(identity.getProperty("Sone.LatestEdition"), (long) 0));
 			if (newSone) {
@@ -893,24 +1131,21 @@ public class Core implements IdentityListener, UpdateListener {
 						newSones.add(sone.getId());
 					}
 				}
-				if (newSone) {
-					coreListenerManager.fireNewSoneFound(sone);
-				}
 			}
-			remoteSones.put(identity.getId(), sone);
-			soneDownloader.addSone(sone);
-			setSoneStatus(sone, SoneStatus.unknown);
-			new Thread(new Runnable() {
-
-				@Override
-				@SuppressWarnings("synthetic-access")
-				public void run() {
-					soneDownloader.fetchSone(sone);
-				}
-
-			}, "Sone Downloader").start();
-			return sone;
 		}
+		if (newSone) {
+			coreListenerManager.fireNewSoneFound(sone);
+		}
+		if (cachedSone != null) {
+			/* updateSone() ignores the cached Sone if it is not newer. */
+			logger.log(Level.FINE, "Using cached Sone %s from edition %d.", new Object[] { sone, cachedSone.getLatestEdition() });
+			updateSone(cachedSone);
+			soneDownloader.setFetchedEdition(sone, cachedSone.getLatestEdition());
+		}
+		soneDownloader.addSone(sone);
+		setSoneStatus(sone, (sone.getTime() == 0) ? SoneStatus.unknown : SoneStatus.idle);
+		soneDownloader.scheduleFetch(sone);
+		return sone;
 	}
 
 	/**
@@ -1014,76 +1249,154 @@ public class Core implements IdentityListener, UpdateListener {
 		if (hasSone(sone.getId())) {
 			boolean soneRescueMode = isLocalSone(sone) && isSoneRescueMode();
 			Sone storedSone = getSone(sone.getId());
-			if (!soneRescueMode && !(sone.getTime() > storedSone.getTime())) {
-				logger.log(Level.FINE, "Downloaded Sone %s is not newer than stored Sone %s.", new Object[] { sone, storedSone });
-				return;
-			}
-			synchronized (posts) {
-				if (!soneRescueMode) {
-					for (Post post : storedSone.getPosts()) {
-						posts.remove(post.getId());
-						if (!sone.getPosts().contains(post)) {
-							coreListenerManager.firePostRemoved(post);
+			/* updates of different Sones may run in parallel. */
+			synchronized (storedSone) {
+				if (!soneRescueMode && !(sone.getTime() > storedSone.getTime())) {
+					logger.log(Level.FINE, "Downloaded Sone %s is not newer than stored Sone %s.", new Object[] { sone, storedSone });
+					return;
+				}
+
+				/* rescued older editions must not overwrite newer data. */
+				boolean newerSone = !soneRescueMode || (sone.getTime() > storedSone.getTime());
+
+				/* find added, changed, and removed posts. */
+				Set<Post> storedPosts = new HashSet<Post>(storedSone.getPosts());
+				Set<Post> downloadedPosts = new HashSet<Post>();
+				List<Post> addedPosts = new ArrayList<Post>();
+				List<Post> changedPosts = new ArrayList<Post>();
+				List<Post> removedPosts = new ArrayList<Post>();
+				for (Post downloadedPost : sone.getPosts()) {
+					boolean knownPost = storedPosts.contains(downloadedPost);
+					Post post = knownPost ? getPost(downloadedPost.getId()) : null;
+					boolean changedPost = knownPost && newerSone && isChangedPost(post, downloadedPost);
+					if (!knownPost || changedPost) {
+						post = internPost(storedSone, downloadedPost);
+						if (post == null) {
+							continue;
 						}
 					}
+					downloadedPosts.add(post);
+					if (!knownPost) {
+						addedPosts.add(post);
+					} else if (changedPost) {
+						changedPosts.add(post);
+					}
 				}
-				synchronized (newPosts) {
-					for (Post post : sone.getPosts()) {
-						post.setSone(getSone(post.getSone().getId()));
-						if (!storedSone.getPosts().contains(post) && !knownPosts.contains(post.getId())) {
-							newPosts.add(post.getId());
-							coreListenerManager.fireNewPostFound(post);
+				if (!soneRescueMode) {
+					for (Post post : storedPosts) {
+						if (!downloadedPosts.contains(post)) {
+							removedPosts.add(post);
 						}
-						posts.put(post.getId(), post);
 					}
 				}
-			}
-			synchronized (replies) {
-				if (!soneRescueMode) {
-					for (Reply reply : storedSone.getReplies()) {
-						replies.remove(reply.getId());
-						if (!sone.getReplies().contains(reply)) {
-							coreListenerManager.fireReplyRemoved(reply);
+
+				/* find added, changed, and removed replies. */
+				Set<Reply> storedReplies = storedSone.getReplies();
+				Set<Reply> downloadedReplies = new HashSet<Reply>();
+				List<Reply> addedReplies = new ArrayList<Reply>();
+				List<Reply> changedReplies = new ArrayList<Reply>();
+				List<Reply> removedReplies = new ArrayList<Reply>();
+				for (Reply downloadedReply : sone.getReplies()) {
+					boolean knownReply = storedReplies.contains(downloadedReply);
+					Reply reply = knownReply ? getReply(downloadedReply.getId()) : null;
+					boolean changedReply = knownReply && newerSone && isChangedReply(reply, downloadedReply);
+					if (changedReply) {
+						/* the reply might now refer to a different post. */
+						removeReplyFromIndex(reply);
+					}
+					if (!knownReply || changedReply) {
+						reply = internReply(storedSone, downloadedReply);
+						if (reply == null) {
+							continue;
 						}
 					}
+					downloadedReplies.add(reply);
+					if (!knownReply) {
+						addedReplies.add(reply);
+					} else if (changedReply) {
+						changedReplies.add(reply);
+					}
 				}
-				synchronized (newReplies) {
-					for (Reply reply : sone.getReplies()) {
-						reply.setSone(getSone(reply.getSone().getId()));
-						if (!storedSone.getReplies().contains(reply) && !knownReplies.contains(reply.getId())) {
-							newReplies.add(reply.getId());
-							coreListenerManager.fireNewReplyFound(reply);
+				if (!soneRescueMode) {
+					for (Reply reply : storedReplies) {
+						if (!downloadedReplies.contains(reply)) {
+							removedReplies.add(reply);
 						}
-						replies.put(reply.getId(), reply);
 					}
 				}
-			}
-			synchronized (storedSone) {
-				if (!soneRescueMode || (sone.getTime() > storedSone.getTime())) {
+
+				/* apply the changes. */
+				long storedTime = storedSone.getTime();
+				long storedLatestEdition = storedSone.getLatestEdition();
+				if (newerSone) {
 					storedSone.setTime(sone.getTime());
 				}
-				storedSone.setClient(sone.getClient());
-				storedSone.setProfile(sone.getProfile());
-				if (soneRescueMode) {
-					for (Post post : sone.getPosts()) {
-						storedSone.addPost(post);
+				/* rescued older editions only contribute posts, replies, and likes. */
+				if (newerSone) {
+					storedSone.setClient(sone.getClient());
+					storedSone.setProfile(sone.getProfile());
+				}
+				if (!addedPosts.isEmpty() || !changedPosts.isEmpty() || !removedPosts.isEmpty()) {
+					/* setting the posts sorts them again. */
+					Set<Post> newSonePosts = new HashSet<Post>(storedPosts);
+					newSonePosts.removeAll(removedPosts);
+					newSonePosts.addAll(addedPosts);
+					storedSone.setPosts(newSonePosts);
+				}
+				for (Post post : removedPosts) {
+					posts.remove(post.getId());
+					coreListenerManager.firePostRemoved(post);
+				}
+				for (Post post : addedPosts) {
+					storePost(post);
+					boolean newPost;
+					synchronized (newPosts) {
+						newPost = !isLocalSone(storedSone) && !postReadState.isKnown(post) && newPosts.add(post.getId());
 					}
-					for (Reply reply : sone.getReplies()) {
-						storedSone.addReply(reply);
+					if (newPost) {
+						coreListenerManager.fireNewPostFound(post);
 					}
-					for (String likedPostId : sone.getLikedPostIds()) {
-						storedSone.addLikedPostId(likedPostId);
+				}
+				if (!addedReplies.isEmpty() || !changedReplies.isEmpty() || !removedReplies.isEmpty()) {
+					Set<Reply> newSoneReplies = new HashSet<Reply>(storedReplies);
+					newSoneReplies.removeAll(removedReplies);
+					newSoneReplies.addAll(addedReplies);
+					storedSone.setReplies(newSoneReplies);
+				}
+				for (Reply reply : removedReplies) {
+					replies.remove(reply.getId());
+					removeReplyFromIndex(reply);
+					coreListenerManager.fireReplyRemoved(reply);
+				}
+				for (Reply reply : changedReplies) {
+					storeReply(reply);
+				}
+				for (Reply reply : addedReplies) {
+					storeReply(reply);
+					boolean newReply;
+					synchronized (newReplies) {
+						newReply = !isLocalSone(storedSone) && !replyReadState.isKnown(reply) && newReplies.add(reply.getId());
 					}
-					for (String likedReplyId : sone.getLikedReplyIds()) {
-						storedSone.addLikedReplyId(likedReplyId);
+					if (newReply) {
+						coreListenerManager.fireNewReplyFound(reply);
 					}
-				} else {
-					storedSone.setPosts(sone.getPosts());
-					storedSone.setReplies(sone.getReplies());
-					storedSone.setLikePostIds(sone.getLikedPostIds());
-					storedSone.setLikeReplyIds(sone.getLikedReplyIds());
 				}
-				storedSone.setLatestEdition(sone.getLatestEdition());
+				boolean likesChanged = updateLikedPostIds(storedSone, sone.getLikedPostIds(), !soneRescueMode);
+				likesChanged |= updateLikedReplyIds(storedSone, sone.getLikedReplyIds(), !soneRescueMode);
+				/* rescued editions are fetched in no particular order. */
+				storedSone.setLatestEdition(soneRescueMode ? Math.max(storedSone.getLatestEdition(), sone.getLatestEdition()) : sone.getLatestEdition());
+				List<Post> oldTimelinePosts = new ArrayList<Post>(removedPosts);
+				oldTimelinePosts.addAll(changedPosts);
+				List<Post> newTimelinePosts = new ArrayList<Post>(addedPosts);
+				newTimelinePosts.addAll(changedPosts);
+				updateTimelines(oldTimelinePosts, newTimelinePosts);
+				postReadState.compact(storedSone.getId(), storedSone.getPosts());
+				replyReadState.compact(storedSone.getId(), storedSone.getReplies());
+				/* only build and compare the stored values if anything changed. */
+				boolean changed = (storedSone.getTime() != storedTime) || (storedSone.getLatestEdition() != storedLatestEdition) || !addedPosts.isEmpty() || !changedPosts.isEmpty() || !removedPosts.isEmpty() || !addedReplies.isEmpty() || !changedReplies.isEmpty() || !removedReplies.isEmpty() || likesChanged;
+				if (changed) {
+					saveScheduler.scheduleSone(storedSone);
+				}
 			}
 		}
 	}
@@ -1109,6 +1422,15 @@ public class Core implements IdentityListener, UpdateListener {
 			localSones.remove(sone.getId());
 			soneInserters.remove(sone).stop();
 		}
+		updateLikes(postLikes, sone, sone.getLikedPostIds(), Collections.<String> emptySet());
+		updateLikes(replyLikes, sone, sone.getLikedReplyIds(), Collections.<String> emptySet());
+		timelines.remove(sone.getId());
+		postReadState.removeSone(sone.getId());
+		replyReadState.removeSone(sone.getId());
+		synchronized (sone) {
+			/* a running save of the Sone would create its files again. */
+			soneStore.delete(sone.getId());
+		}
 		try {
 			((OwnIdentity) sone.getIdentity()).removeContext("Sone");
 			((OwnIdentity) sone.getIdentity()).removeProperty("Sone.LatestEdition");
@@ -1123,8 +1445,60 @@ public class Core implements IdentityListener, UpdateListener {
 	}
 
 	/**
-	 * Loads and updates the given Sone from the configuration. If any error is
-	 * encountered, loading is aborted and the given Sone is not changed.
+	 * Lets the given local Sone follow the Sone with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that follows
+	 * @param friendSoneId
+	 *            The ID of the Sone to follow
+	 */
+	public void followSone(Sone sone, String friendSoneId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to follow Sone for non-local Sone: %s", sone);
+			return;
+		}
+		sone.addFriend(internSoneId(friendSoneId));
+		if (sone.hasFriend(friendSoneId) && hasSone(friendSoneId)) {
+			Timeline timeline = timelines.get(sone.getId());
+			if (timeline != null) {
+				timeline.addPosts(getSone(friendSoneId).getPosts());
+			}
+		}
+		saveSone(sone);
+	}
+
+	/**
+	 * Lets the given local Sone stop following the Sone with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that stops following
+	 * @param friendSoneId
+	 *            The ID of the Sone to stop following
+	 */
+	public void unfollowSone(Sone sone, String friendSoneId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to unfollow Sone for non-local Sone: %s", sone);
+			return;
+		}
+		sone.removeFriend(friendSoneId);
+		if (hasSone(friendSoneId)) {
+			Timeline timeline = timelines.get(sone.getId());
+			if (timeline != null) {
+				for (Post post : getSone(friendSoneId).getPosts()) {
+					if (!isInTimeline(sone, post)) {
+						timeline.removePost(post);
+					}
+				}
+			}
+		}
+		saveSone(sone);
+	}
+
+	/**
+	 * Loads and updates the given Sone from the {@link SoneStore}. If no data
+	 * has been stored for the Sone yet, it is loaded from the configuration.
+	 * If any error is encountered, loading is aborted and the given Sone is
+	 * not changed.
 	 *
 	 * @param sone
 	 *            The Sone to load and update
@@ -1134,227 +1508,85 @@ public class Core implements IdentityListener, UpdateListener {
 			logger.log(Level.FINE, "Tried to load non-local Sone: %s", sone);
 			return;
 		}
-
-		/* load Sone. */
-		String sonePrefix = "Sone/" + sone.getId();
-		Long soneTime = configuration.getLongValue(sonePrefix + "/Time").getValue(null);
-		if (soneTime == null) {
-			logger.log(Level.INFO, "Could not load Sone because no Sone has been saved.");
+		Map<String, String> values = loadSoneValues(sone);
+		if (values == null) {
 			return;
 		}
-		String lastInsertFingerprint = configuration.getStringValue(sonePrefix + "/LastInsertFingerprint").getValue("");
-
-		/* load profile. */
-		Profile profile = new Profile();
-		profile.setFirstName(configuration.getStringValue(sonePrefix + "/Profile/FirstName").getValue(null));
-		profile.setMiddleName(configuration.getStringValue(sonePrefix + "/Profile/MiddleName").getValue(null));
-		profile.setLastName(configuration.getStringValue(sonePrefix + "/Profile/LastName").getValue(null));
-		profile.setBirthDay(configuration.getIntValue(sonePrefix + "/Profile/BirthDay").getValue(null));
-		profile.setBirthMonth(configuration.getIntValue(sonePrefix + "/Profile/BirthMonth").getValue(null));
-		profile.setBirthYear(configuration.getIntValue(sonePrefix + "/Profile/BirthYear").getValue(null));
+		Sone storedSone = parseStoredSone(sone, values);
+		if (storedSone == null) {
+			return;
+		}
+		synchronized (sone) {
+			applyStoredSone(sone, storedSone, values);
+		}
+	}
 
-		/* load profile fields. */
-		while (true) {
-			String fieldPrefix = sonePrefix + "/Profile/Fields/" + profile.getFields().size();
-			String fieldName = configuration.getStringValue(fieldPrefix + "/Name").getValue(null);
-			if (fieldName == null) {
-				break;
-			}
-			String fieldValue = configuration.getStringValue(fieldPrefix + "/Value").getValue("");
-			profile.addField(fieldName).setValue(fieldValue);
+	/**
+	 * Saves the given Sone. This will persist all local settings for the given
+	 * Sone, such as the friends list and similar, private options. The Sone
+	 * is saved in the background; several saves of the same Sone in short
+	 * succession are combined into a single one.
+	 *
+	 * @param sone
+	 *            The Sone to save
+	 */
+	public void saveSone(Sone sone) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to save non-local Sone: %s", sone);
+			return;
 		}
-
-		/* load posts. */
-		Set<Post> posts = new HashSet<Post>();
-		while (true) {
-			String postPrefix = sonePrefix + "/Posts/" + posts.size();
-			String postId = configuration.getStringValue(postPrefix + "/ID").getValue(null);
-			if (postId == null) {
-				break;
-			}
-			String postRecipientId = configuration.getStringValue(postPrefix + "/Recipient").getValue(null);
-			long postTime = configuration.getLongValue(postPrefix + "/Time").getValue((long) 0);
-			String postText = configuration.getStringValue(postPrefix + "/Text").getValue(null);
-			if ((postTime == 0) || (postText == null)) {
-				logger.log(Level.WARNING, "Invalid post found, aborting load!");
-				return;
-			}
-			Post post = getPost(postId).setSone(sone).setTime(postTime).setText(postText);
-			if ((postRecipientId != null) && (postRecipientId.length() == 43)) {
-				post.setRecipient(getSone(postRecipientId));
-			}
-			posts.add(post);
-		}
-
-		/* load replies. */
-		Set<Reply> replies = new HashSet<Reply>();
-		while (true) {
-			String replyPrefix = sonePrefix + "/Replies/" + replies.size();
-			String replyId = configuration.getStringValue(replyPrefix + "/ID").getValue(null);
-			if (replyId == null) {
-				break;
-			}
-			String postId = configuration.getStringValue(replyPrefix + "/Post/ID").getValue(null);
-			long replyTime = configuration.getLongValue(replyPrefix + "/Time").getValue((long) 0);
-			String replyText = configuration.getStringValue(replyPrefix + "/Text").getValue(null);
-			if ((postId == null) || (replyTime == 0) || (replyText == null)) {
-				logger.log(Level.WARNING, "Invalid reply found, aborting load!");
-				return;
-			}
-			replies.add(getReply(replyId).setSone(sone).setPost(getPost(postId)).setTime(replyTime).setText(replyText));
-		}
-
-		/* load post likes. */
-		Set<String> likedPostIds = new HashSet<String>();
-		while (true) {
-			String likedPostId = configuration.getStringValue(sonePrefix + "/Likes/Post/" + likedPostIds.size() + "/ID").getValue(null);
-			if (likedPostId == null) {
-				break;
-			}
-			likedPostIds.add(likedPostId);
-		}
-
-		/* load reply likes. */
-		Set<String> likedReplyIds = new HashSet<String>();
-		while (true) {
-			String likedReplyId = configuration.getStringValue(sonePrefix + "/Likes/Reply/" + likedReplyIds.size() + "/ID").getValue(null);
-			if (likedReplyId == null) {
-				break;
-			}
-			likedReplyIds.add(likedReplyId);
-		}
-
-		/* load friends. */
-		Set<String> friends = new HashSet<String>();
-		while (true) {
-			String friendId = configuration.getStringValue(sonePrefix + "/Friends/" + friends.size() + "/ID").getValue(null);
-			if (friendId == null) {
-				break;
-			}
-			friends.add(friendId);
-		}
-
-		/* if we’re still here, Sone was loaded successfully. */
-		synchronized (sone) {
-			sone.setTime(soneTime);
-			sone.setProfile(profile);
-			sone.setPosts(posts);
-			sone.setReplies(replies);
-			sone.setLikePostIds(likedPostIds);
-			sone.setLikeReplyIds(likedReplyIds);
-			sone.setFriends(friends);
-			soneInserters.get(sone).setLastInsertFingerprint(lastInsertFingerprint);
-		}
-		synchronized (newSones) {
-			for (String friend : friends) {
-				knownSones.add(friend);
-			}
-		}
-		synchronized (newPosts) {
-			for (Post post : posts) {
-				knownPosts.add(post.getId());
-			}
-		}
-		synchronized (newReplies) {
-			for (Reply reply : replies) {
-				knownReplies.add(reply.getId());
-			}
-		}
-	}
+		saveScheduler.scheduleSone(sone);
+	}
 
 	/**
-	 * Saves the given Sone. This will persist all local settings for the given
-	 * Sone, such as the friends list and similar, private options.
+	 * Writes the given Sone to the {@link SoneStore}. Only the parts of the
+	 * Sone that have changed since the last save are written. Remote Sones are
+	 * written to the cache of downloaded Sones. This method is only called by
+	 * the {@link SaveScheduler}.
 	 *
 	 * @param sone
-	 *            The Sone to save
+	 *            The Sone to store
+	 * @return {@code true} if the Sone was stored or does not need to be
+	 *         stored, {@code false} if storing the Sone failed
 	 */
-	public synchronized void saveSone(Sone sone) {
+	boolean storeSone(Sone sone) {
+		if (isRemoteSone(sone)) {
+			return storeRemoteSone(sone);
+		}
 		if (!isLocalSone(sone)) {
 			logger.log(Level.FINE, "Tried to save non-local Sone: %s", sone);
-			return;
+			return true;
 		}
 		if (!(sone.getIdentity() instanceof OwnIdentity)) {
 			logger.log(Level.WARNING, "Local Sone without OwnIdentity found, refusing to save: %s", sone);
-			return;
+			return true;
 		}
 
-		logger.log(Level.INFO, "Saving Sone: %s", sone);
-		try {
-			((OwnIdentity) sone.getIdentity()).setProperty("Sone.LatestEdition", String.valueOf(sone.getLatestEdition()));
-
-			/* save Sone into configuration. */
-			String sonePrefix = "Sone/" + sone.getId();
-			configuration.getLongValue(sonePrefix + "/Time").setValue(sone.getTime());
-			configuration.getStringValue(sonePrefix + "/LastInsertFingerprint").setValue(soneInserters.get(sone).getLastInsertFingerprint());
-
-			/* save profile. */
-			Profile profile = sone.getProfile();
-			configuration.getStringValue(sonePrefix + "/Profile/FirstName").setValue(profile.getFirstName());
-			configuration.getStringValue(sonePrefix + "/Profile/MiddleName").setValue(profile.getMiddleName());
-			configuration.getStringValue(sonePrefix + "/Profile/LastName").setValue(profile.getLastName());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthDay").setValue(profile.getBirthDay());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthMonth").setValue(profile.getBirthMonth());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthYear").setValue(profile.getBirthYear());
-
-			/* save profile fields. */
-			int fieldCounter = 0;
-			for (Field profileField : profile.getFields()) {
-				String fieldPrefix = sonePrefix + "/Profile/Fields/" + fieldCounter++;
-				configuration.getStringValue(fieldPrefix + "/Name").setValue(profileField.getName());
-				configuration.getStringValue(fieldPrefix + "/Value").setValue(profileField.getValue());
-			}
-			configuration.getStringValue(sonePrefix + "/Profile/Fields/" + fieldCounter + "/Name").setValue(null);
-
-			/* save posts. */
-			int postCounter = 0;
-			for (Post post : sone.getPosts()) {
-				String postPrefix = sonePrefix + "/Posts/" + postCounter++;
-				configuration.getStringValue(postPrefix + "/ID").setValue(post.getId());
-				configuration.getStringValue(postPrefix + "/Recipient").setValue((post.getRecipient() != null) ? post.getRecipient().getId() : null);
-				configuration.getLongValue(postPrefix + "/Time").setValue(post.getTime());
-				configuration.getStringValue(postPrefix + "/Text").setValue(post.getText());
-			}
-			configuration.getStringValue(sonePrefix + "/Posts/" + postCounter + "/ID").setValue(null);
-
-			/* save replies. */
-			int replyCounter = 0;
-			for (Reply reply : sone.getReplies()) {
-				String replyPrefix = sonePrefix + "/Replies/" + replyCounter++;
-				configuration.getStringValue(replyPrefix + "/ID").setValue(reply.getId());
-				configuration.getStringValue(replyPrefix + "/Post/ID").setValue(reply.getPost().getId());
-				configuration.getLongValue(replyPrefix + "/Time").setValue(reply.getTime());
-				configuration.getStringValue(replyPrefix + "/Text").setValue(reply.getText());
-			}
-			configuration.getStringValue(sonePrefix + "/Replies/" + replyCounter + "/ID").setValue(null);
-
-			/* save post likes. */
-			int postLikeCounter = 0;
-			for (String postId : sone.getLikedPostIds()) {
-				configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter++ + "/ID").setValue(postId);
-			}
-			configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter + "/ID").setValue(null);
-
-			/* save reply likes. */
-			int replyLikeCounter = 0;
-			for (String replyId : sone.getLikedReplyIds()) {
-				configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter++ + "/ID").setValue(replyId);
-			}
-			configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter + "/ID").setValue(null);
-
-			/* save friends. */
-			int friendCounter = 0;
-			for (String friendId : sone.getFriends()) {
-				configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter++ + "/ID").setValue(friendId);
-			}
-			configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter + "/ID").setValue(null);
-
-			configuration.save();
-			logger.log(Level.INFO, "Sone %s saved.", sone);
-		} catch (ConfigurationException ce1) {
-			logger.log(Level.WARNING, "Could not save Sone: " + sone, ce1);
-		} catch (WebOfTrustException wote1) {
-			logger.log(Level.WARNING, "Could not set WoT property for Sone: " + sone, wote1);
+		/* saves of a Sone are serialized on the Sone. */
+		synchronized (sone) {
+			logger.log(Level.INFO, "Saving Sone: %s", sone);
+			try {
+				((OwnIdentity) sone.getIdentity()).setProperty("Sone.LatestEdition", String.valueOf(sone.getLatestEdition()));
+
+				/* save Sone. */
+				Map<String, String> values = getStoredValues(sone);
+				putStoredValue(values, "LastInsertFingerprint", soneInserters.get(sone).getLastInsertFingerprint());
+
+				/* save friends. */
+				for (String friendId : sone.getFriends()) {
+					putStoredValue(values, "Friends/" + friendId, "");
+				}
+
+				soneStore.save(sone.getId(), values);
+				removeConfigurationSone(sone);
+				logger.log(Level.INFO, "Sone %s saved.", sone);
+				return true;
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "Could not save Sone: " + sone, ioe1);
+			} catch (WebOfTrustException wote1) {
+				logger.log(Level.WARNING, "Could not set WoT property for Sone: " + sone, wote1);
+			}
+			return false;
 		}
 	}
 
@@ -1425,13 +1657,9 @@ public class Core implements IdentityListener, UpdateListener {
 		if (recipient != null) {
 			post.setRecipient(recipient);
 		}
-		synchronized (posts) {
-			posts.put(post.getId(), post);
-		}
-		synchronized (newPosts) {
-			knownPosts.add(post.getId());
-		}
+		posts.put(post.getId(), post);
 		sone.addPost(post);
+		updateTimelines(Collections.<Post> emptyList(), Arrays.asList(post));
 		saveSone(sone);
 		return post;
 	}
@@ -1448,9 +1676,9 @@ public class Core implements IdentityListener, UpdateListener {
 			return;
 		}
 		post.getSone().removePost(post);
-		synchronized (posts) {
-			posts.remove(post.getId());
-		}
+		posts.remove(post.getId());
+		postReadState.remove(post);
+		updateTimelines(Arrays.asList(post), Collections.<Post> emptyList());
 		saveSone(post.getSone());
 	}
 
@@ -1462,13 +1690,59 @@ public class Core implements IdentityListener, UpdateListener {
 	 *            The post to mark as known
 	 */
 	public void markPostKnown(Post post) {
+		boolean markedKnown;
 		synchronized (newPosts) {
-			if (newPosts.remove(post.getId())) {
-				knownPosts.add(post.getId());
-				coreListenerManager.fireMarkPostKnown(post);
-				saveConfiguration();
+			markedKnown = newPosts.remove(post.getId());
+			if (markedKnown) {
+				postReadState.markKnown(post);
 			}
 		}
+		if (markedKnown) {
+			coreListenerManager.fireMarkPostKnown(post);
+			saveConfiguration();
+		}
+	}
+
+	/**
+	 * Adds the post with the given ID to the liked posts of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone that likes the post
+	 * @param postId
+	 *            The ID of the liked post
+	 */
+	public void likePost(Sone sone, String postId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to like post for non-local Sone: %s", sone);
+			return;
+		}
+		synchronized (sone) {
+			String likedPostId = internPostId(postId);
+			sone.addLikedPostId(likedPostId);
+			addLike(postLikes, sone, likedPostId);
+		}
+		saveSone(sone);
+	}
+
+	/**
+	 * Removes the post with the given ID from the liked posts of the given
+	 * Sone.
+	 *
+	 * @param sone
+	 *            The Sone that does not like the post anymore
+	 * @param postId
+	 *            The ID of the post
+	 */
+	public void unlikePost(Sone sone, String postId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to unlike post for non-local Sone: %s", sone);
+			return;
+		}
+		synchronized (sone) {
+			sone.removeLikedPostId(postId);
+			removeLike(postLikes, sone, postId);
+		}
+		saveSone(sone);
 	}
 
 	/**
@@ -1505,12 +1779,8 @@ public class Core implements IdentityListener, UpdateListener {
 			return null;
 		}
 		Reply reply = new Reply(sone, post, System.currentTimeMillis(), text);
-		synchronized (replies) {
-			replies.put(reply.getId(), reply);
-		}
-		synchronized (newReplies) {
-			knownReplies.add(reply.getId());
-		}
+		replies.put(reply.getId(), reply);
+		addReplyToIndex(reply);
 		sone.addReply(reply);
 		saveSone(sone);
 		return reply;
@@ -1528,9 +1798,9 @@ public class Core implements IdentityListener, UpdateListener {
 			logger.log(Level.FINE, "Tried to delete non-local reply: %s", reply);
 			return;
 		}
-		synchronized (replies) {
-			replies.remove(reply.getId());
-		}
+		replies.remove(reply.getId());
+		replyReadState.remove(reply);
+		removeReplyFromIndex(reply);
 		sone.removeReply(reply);
 		saveSone(sone);
 	}
@@ -1543,13 +1813,59 @@ public class Core implements IdentityListener, UpdateListener {
 	 *            The reply to mark as known
 	 */
 	public void markReplyKnown(Reply reply) {
+		boolean markedKnown;
 		synchronized (newReplies) {
-			if (newReplies.remove(reply.getId())) {
-				knownReplies.add(reply.getId());
-				coreListenerManager.fireMarkReplyKnown(reply);
-				saveConfiguration();
+			markedKnown = newReplies.remove(reply.getId());
+			if (markedKnown) {
+				replyReadState.markKnown(reply);
 			}
 		}
+		if (markedKnown) {
+			coreListenerManager.fireMarkReplyKnown(reply);
+			saveConfiguration();
+		}
+	}
+
+	/**
+	 * Adds the reply with the given ID to the liked replies of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone that likes the reply
+	 * @param replyId
+	 *            The ID of the liked reply
+	 */
+	public void likeReply(Sone sone, String replyId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to like reply for non-local Sone: %s", sone);
+			return;
+		}
+		synchronized (sone) {
+			String likedReplyId = internReplyId(replyId);
+			sone.addLikedReplyId(likedReplyId);
+			addLike(replyLikes, sone, likedReplyId);
+		}
+		saveSone(sone);
+	}
+
+	/**
+	 * Removes the reply with the given ID from the liked replies of the given
+	 * Sone.
+	 *
+	 * @param sone
+	 *            The Sone that does not like the reply anymore
+	 * @param replyId
+	 *            The ID of the reply
+	 */
+	public void unlikeReply(Sone sone, String replyId) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, "Tried to unlike reply for non-local Sone: %s", sone);
+			return;
+		}
+		synchronized (sone) {
+			sone.removeLikedReplyId(replyId);
+			removeLike(replyLikes, sone, replyId);
+		}
+		saveSone(sone);
 	}
 
 	/**
@@ -1557,6 +1873,8 @@ public class Core implements IdentityListener, UpdateListener {
 	 */
 	public void start() {
 		loadConfiguration();
+		saveScheduler.start();
+		soneDownloader.start();
 		updateChecker.addUpdateListener(this);
 		updateChecker.start();
 	}
@@ -1565,77 +1883,72 @@ public class Core implements IdentityListener, UpdateListener {
 	 * Stops the core.
 	 */
 	public void stop() {
-		synchronized (localSones) {
-			for (SoneInserter soneInserter : soneInserters.values()) {
-				soneInserter.stop();
+		localSoneLoader.shutdown();
+		try {
+			localSoneLoader.awaitTermination(60, TimeUnit.SECONDS);
+		} catch (InterruptedException ie1) {
+			logger.log(Level.WARNING, "Interrupted while waiting for Sones to be loaded.", ie1);
+		}
+		synchronized (soneRescuers) {
+			stopped = true;
+			for (SoneRescuer soneRescuer : soneRescuers) {
+				soneRescuer.stop();
 			}
 		}
+		for (SoneInserter soneInserter : soneInserters.values()) {
+			soneInserter.stop();
+		}
 		updateChecker.stop();
 		updateChecker.removeUpdateListener(this);
 		soneDownloader.stop();
+		saveScheduler.stop();
 		saveConfiguration();
-		stopped = true;
+		saveScheduler.flush();
 	}
 
 	/**
-	 * Saves the current options.
+	 * Saves the current options. The configuration is saved in the
+	 * background; several saves in short succession are combined into a
+	 * single one.
 	 */
 	public void saveConfiguration() {
-		synchronized (configuration) {
-			if (storingConfiguration) {
-				logger.log(Level.FINE, "Already storing configuration…");
-				return;
-			}
-			storingConfiguration = true;
-		}
+		saveScheduler.scheduleConfiguration();
+	}
 
+	/**
+	 * Writes the current options to the configuration. This method is only
+	 * called by the {@link SaveScheduler}.
+	 *
+	 * @return {@code true} if the configuration was stored, {@code false} if
+	 *         storing it failed
+	 */
+	boolean storeConfiguration() {
 		/* store the options first. */
 		try {
-			configuration.getIntValue("Option/ConfigurationVersion").setValue(0);
-			configuration.getIntValue("Option/InsertionDelay").setValue(options.getIntegerOption("InsertionDelay").getReal());
-			configuration.getIntValue("Option/PositiveTrust").setValue(options.getIntegerOption("PositiveTrust").getReal());
-			configuration.getIntValue("Option/NegativeTrust").setValue(options.getIntegerOption("NegativeTrust").getReal());
-			configuration.getStringValue("Option/TrustComment").setValue(options.getStringOption("TrustComment").getReal());
-			configuration.getBooleanValue("Option/SoneRescueMode").setValue(options.getBooleanOption("SoneRescueMode").getReal());
-			configuration.getBooleanValue("Option/ClearOnNextRestart").setValue(options.getBooleanOption("ClearOnNextRestart").getReal());
-			configuration.getBooleanValue("Option/ReallyClearOnNextRestart").setValue(options.getBooleanOption("ReallyClearOnNextRestart").getReal());
-
-			/* save known Sones. */
-			int soneCounter = 0;
-			synchronized (newSones) {
-				for (String knownSoneId : knownSones) {
-					configuration.getStringValue("KnownSone/" + soneCounter++ + "/ID").setValue(knownSoneId);
-				}
-				configuration.getStringValue("KnownSone/" + soneCounter + "/ID").setValue(null);
-			}
-
-			/* save known posts. */
-			int postCounter = 0;
-			synchronized (newPosts) {
-				for (String knownPostId : knownPosts) {
-					configuration.getStringValue("KnownPosts/" + postCounter++ + "/ID").setValue(knownPostId);
-				}
-				configuration.getStringValue("KnownPosts/" + postCounter + "/ID").setValue(null);
-			}
-
-			/* save known replies. */
-			int replyCounter = 0;
-			synchronized (newReplies) {
-				for (String knownReplyId : knownReplies) {
-					configuration.getStringValue("KnownReplies/" + replyCounter++ + "/ID").setValue(knownReplyId);
-				}
-				configuration.getStringValue("KnownReplies/" + replyCounter + "/ID").setValue(null);
+			synchronized (configuration) {
+				configuration.getIntValue("Option/ConfigurationVersion").setValue(0);
+				configuration.getIntValue("Option/InsertionDelay").setValue(options.getIntegerOption("InsertionDelay").getReal());
+				configuration.getIntValue("Option/DownloadThreads").setValue(options.getIntegerOption("DownloadThreads").getReal());
+				configuration.getIntValue("Option/MaximumSoneSize").setValue(options.getIntegerOption("MaximumSoneSize").getReal());
+				configuration.getIntValue("Option/PositiveTrust").setValue(options.getIntegerOption("PositiveTrust").getReal());
+				configuration.getIntValue("Option/NegativeTrust").setValue(options.getIntegerOption("NegativeTrust").getReal());
+				configuration.getStringValue("Option/TrustComment").setValue(options.getStringOption("TrustComment").getReal());
+				configuration.getBooleanValue("Option/SoneRescueMode").setValue(options.getBooleanOption("SoneRescueMode").getReal());
+				configuration.getIntValue("Option/SoneRescueDepth").setValue(options.getIntegerOption("SoneRescueDepth").getReal());
+				configuration.getIntValue("Option/SoneRescueIdleEditions").setValue(options.getIntegerOption("SoneRescueIdleEditions").getReal());
+				configuration.getBooleanValue("Option/ClearOnNextRestart").setValue(options.getBooleanOption("ClearOnNextRestart").getReal());
+				configuration.getBooleanValue("Option/ReallyClearOnNextRestart").setValue(options.getBooleanOption("ReallyClearOnNextRestart").getReal());
+
+				/* now save it. */
+				configuration.save();
 			}
 
-			/* now save it. */
-			configuration.save();
+			/* save known Sones and read states. */
+			return saveKnownState();
 
 		} catch (ConfigurationException ce1) {
 			logger.log(Level.SEVERE, "Could not store configuration!", ce1);
-		} finally {
-			synchronized (configuration) {
-				storingConfiguration = false;
-			}
+			return false;
 		}
 	}
 
@@ -1656,11 +1969,31 @@ public class Core implements IdentityListener, UpdateListener {
 				SoneInserter.setInsertionDelay(newValue);
 			}
 
+		}));
+		options.addIntegerOption("DownloadThreads", new DefaultOption<Integer>(SoneDownloader.DEFAULT_FETCH_THREADS, new OptionWatcher<Integer>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void optionChanged(Option<Integer> option, Integer oldValue, Integer newValue) {
+				soneDownloader.setFetchThreads(newValue);
+			}
+
+		}));
+		options.addIntegerOption("MaximumSoneSize", new DefaultOption<Integer>((int) (SoneDownloader.DEFAULT_MAXIMUM_SONE_SIZE / 1024), new OptionWatcher<Integer>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void optionChanged(Option<Integer> option, Integer oldValue, Integer newValue) {
+				soneDownloader.setMaximumSoneSize(newValue * 1024L);
+			}
+
 		}));
 		options.addIntegerOption("PositiveTrust", new DefaultOption<Integer>(75));
 		options.addIntegerOption("NegativeTrust", new DefaultOption<Integer>(-100));
 		options.addStringOption("TrustComment", new DefaultOption<String>("Set from Sone Web Interface"));
 		options.addBooleanOption("SoneRescueMode", new DefaultOption<Boolean>(false));
+		options.addIntegerOption("SoneRescueDepth", new DefaultOption<Integer>(0));
+		options.addIntegerOption("SoneRescueIdleEditions", new DefaultOption<Integer>(SoneRescuer.DEFAULT_IDLE_EDITIONS));
 		options.addBooleanOption("ClearOnNextRestart", new DefaultOption<Boolean>(false));
 		options.addBooleanOption("ReallyClearOnNextRestart", new DefaultOption<Boolean>(false));
 
@@ -1672,120 +2005,1196 @@ public class Core implements IdentityListener, UpdateListener {
 		options.getBooleanOption("ReallyClearOnNextRestart").set(null);
 		if (clearConfiguration) {
 			/* stop loading the configuration. */
+			knownStateJournal.delete();
 			return;
 		}
 
 		options.getIntegerOption("InsertionDelay").set(configuration.getIntValue("Option/InsertionDelay").getValue(null));
+		options.getIntegerOption("DownloadThreads").set(configuration.getIntValue("Option/DownloadThreads").getValue(null));
+		options.getIntegerOption("MaximumSoneSize").set(configuration.getIntValue("Option/MaximumSoneSize").getValue(null));
 		options.getIntegerOption("PositiveTrust").set(configuration.getIntValue("Option/PositiveTrust").getValue(null));
 		options.getIntegerOption("NegativeTrust").set(configuration.getIntValue("Option/NegativeTrust").getValue(null));
 		options.getStringOption("TrustComment").set(configuration.getStringValue("Option/TrustComment").getValue(null));
 		options.getBooleanOption("SoneRescueMode").set(configuration.getBooleanValue("Option/SoneRescueMode").getValue(null));
+		options.getIntegerOption("SoneRescueDepth").set(configuration.getIntValue("Option/SoneRescueDepth").getValue(null));
+		options.getIntegerOption("SoneRescueIdleEditions").set(configuration.getIntValue("Option/SoneRescueIdleEditions").getValue(null));
+
+		/* load known Sones and read states. */
+		loadKnownState();
+
+	}
 
-		/* load known Sones. */
+	/**
+	 * Loads the known Sones and the read states from their journal. If there
+	 * is no journal yet, they are loaded from the configuration and written
+	 * to a new journal.
+	 */
+	private void loadKnownState() {
+		Map<String, String> values;
+		try {
+			values = knownStateJournal.load();
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not load known Sones, posts, and replies!", ioe1);
+			return;
+		}
+		if (values == null) {
+			loadConfigurationKnownState();
+			return;
+		}
+		for (Entry<String, String> value : values.entrySet()) {
+			String key = value.getKey();
+			if (key.startsWith("Sones/")) {
+				knownSones.add(key.substring("Sones/".length()));
+			} else if (key.startsWith("ReadTimes/Posts/")) {
+				postReadState.setReadTime(key.substring("ReadTimes/Posts/".length()), Numbers.safeParseLong(value.getValue(), (long) 0));
+			} else if (key.startsWith("ReadTimes/Replies/")) {
+				replyReadState.setReadTime(key.substring("ReadTimes/Replies/".length()), Numbers.safeParseLong(value.getValue(), (long) 0));
+			} else if (key.startsWith("KnownPosts/")) {
+				postReadState.addKnownId("".equals(value.getValue()) ? null : value.getValue(), key.substring("KnownPosts/".length()));
+			} else if (key.startsWith("KnownReplies/")) {
+				replyReadState.addKnownId("".equals(value.getValue()) ? null : value.getValue(), key.substring("KnownReplies/".length()));
+			}
+		}
+	}
+
+	/**
+	 * Loads the known Sones and the read states from the configuration, where
+	 * they were stored before they had their own journal, and writes them to
+	 * the journal. Once the journal has been written, the lists are removed
+	 * from the configuration.
+	 */
+	private void loadConfigurationKnownState() {
 		int soneCounter = 0;
 		while (true) {
 			String knownSoneId = configuration.getStringValue("KnownSone/" + soneCounter++ + "/ID").getValue(null);
 			if (knownSoneId == null) {
 				break;
 			}
-			synchronized (newSones) {
-				knownSones.add(knownSoneId);
-			}
+			knownSones.add(knownSoneId);
 		}
-
-		/* load known posts. */
-		int postCounter = 0;
-		while (true) {
-			String knownPostId = configuration.getStringValue("KnownPosts/" + postCounter++ + "/ID").getValue(null);
-			if (knownPostId == null) {
-				break;
-			}
-			synchronized (newPosts) {
-				knownPosts.add(knownPostId);
-			}
+		loadReadState(postReadState, "Posts");
+		loadReadState(replyReadState, "Replies");
+		try {
+			knownStateJournal.writeSnapshot(getKnownStateValues());
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not store known Sones, posts, and replies!", ioe1);
+			return;
 		}
-
-		/* load known replies. */
-		int replyCounter = 0;
-		while (true) {
-			String knownReplyId = configuration.getStringValue("KnownReplies/" + replyCounter++ + "/ID").getValue(null);
-			if (knownReplyId == null) {
-				break;
-			}
-			synchronized (newReplies) {
-				knownReplies.add(knownReplyId);
+		synchronized (configuration) {
+			try {
+				configuration.getStringValue("KnownSone/0/ID").setValue(null);
+				configuration.getStringValue("KnownPosts/0/ID").setValue(null);
+				configuration.getStringValue("KnownReplies/0/ID").setValue(null);
+				configuration.getStringValue("ReadTimes/Posts/0/Sone").setValue(null);
+				configuration.getStringValue("ReadTimes/Replies/0/Sone").setValue(null);
+				saveConfiguration();
+			} catch (ConfigurationException ce1) {
+				logger.log(Level.WARNING, "Could not remove known Sones, posts, and replies from configuration!", ce1);
 			}
 		}
-
 	}
 
 	/**
-	 * Generate a Sone URI from the given URI and latest edition.
+	 * Appends the changes of the known Sones and the read states to their
+	 * journal. If the journal has grown too large, a new snapshot is written
+	 * instead.
 	 *
-	 * @param uriString
-	 *            The URI to derive the Sone URI from
-	 * @return The derived URI
+	 * @return {@code true} if the known state was stored, {@code false} if
+	 *         storing it failed
 	 */
-	private FreenetURI getSoneUri(String uriString) {
+	private boolean saveKnownState() {
 		try {
-			FreenetURI uri = new FreenetURI(uriString).setDocName("Sone").setMetaString(new String[0]);
-			return uri;
-		} catch (MalformedURLException mue1) {
-			logger.log(Level.WARNING, "Could not create Sone URI from URI: " + uriString, mue1);
-			return null;
+			if (knownStateJournal.needsSnapshot(0, knownSones.size() + postReadState.size() + replyReadState.size())) {
+				knownStateJournal.writeSnapshot(getKnownStateValues());
+			}
+			knownStateJournal.flush();
+			return true;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not store known Sones, posts, and replies!", ioe1);
+			return false;
 		}
 	}
 
-	//
-	// INTERFACE IdentityListener
-	//
-
 	/**
-	 * {@inheritDoc}
+	 * Returns the complete known Sones and read states, using the keys of the
+	 * known state journal.
+	 *
+	 * @return The known Sones and read states
 	 */
-	@Override
-	public void ownIdentityAdded(OwnIdentity ownIdentity) {
-		logger.log(Level.FINEST, "Adding OwnIdentity: " + ownIdentity);
-		if (ownIdentity.hasContext("Sone")) {
-			trustedIdentities.put(ownIdentity, Collections.synchronizedSet(new HashSet<Identity>()));
-			addLocalSone(ownIdentity);
+	private Map<String, String> getKnownStateValues() {
+		Map<String, String> values = new HashMap<String, String>();
+		for (String knownSoneId : knownSones) {
+			values.put("Sones/" + knownSoneId, "");
+		}
+		for (Entry<String, Long> readTime : postReadState.getReadTimes().entrySet()) {
+			values.put("ReadTimes/Posts/" + readTime.getKey(), String.valueOf(readTime.getValue()));
+		}
+		for (Entry<String, Long> readTime : replyReadState.getReadTimes().entrySet()) {
+			values.put("ReadTimes/Replies/" + readTime.getKey(), String.valueOf(readTime.getValue()));
 		}
+		for (Entry<String, String> knownPostId : postReadState.getKnownIds().entrySet()) {
+			values.put("KnownPosts/" + knownPostId.getKey(), (knownPostId.getValue() == null) ? "" : knownPostId.getValue());
+		}
+		for (Entry<String, String> knownReplyId : replyReadState.getKnownIds().entrySet()) {
+			values.put("KnownReplies/" + knownReplyId.getKey(), (knownReplyId.getValue() == null) ? "" : knownReplyId.getValue());
+		}
+		return values;
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Marks the Sone with the given ID as known.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
 	 */
-	@Override
-	public void ownIdentityRemoved(OwnIdentity ownIdentity) {
-		logger.log(Level.FINEST, "Removing OwnIdentity: " + ownIdentity);
-		trustedIdentities.remove(ownIdentity);
+	private void addKnownSone(String soneId) {
+		if (knownSones.add(soneId)) {
+			knownStateJournal.put("Sones/" + soneId, "");
+		}
 	}
 
 	/**
-	 * {@inheritDoc}
+	 * Loads the given read state from the configuration. The “read up to”
+	 * times are stored below “ReadTimes/<type>”, the IDs of elements that have
+	 * been read out of order below “Known<type>”.
+	 *
+	 * @param readState
+	 *            The read state to load
+	 * @param type
+	 *            The type of the elements, i.e. “Posts” or “Replies”
 	 */
-	@Override
-	public void identityAdded(OwnIdentity ownIdentity, Identity identity) {
-		logger.log(Level.FINEST, "Adding Identity: " + identity);
-		trustedIdentities.get(ownIdentity).add(identity);
-		addRemoteSone(identity);
+	private void loadReadState(ReadState<?> readState, String type) {
+		int readTimeCounter = 0;
+		while (true) {
+			String readTimePrefix = "ReadTimes/" + type + "/" + readTimeCounter++;
+			String soneId = configuration.getStringValue(readTimePrefix + "/Sone").getValue(null);
+			if (soneId == null) {
+				break;
+			}
+			Long readTime = configuration.getLongValue(readTimePrefix + "/Time").getValue(null);
+			if (readTime != null) {
+				readState.setReadTime(soneId, readTime);
+			}
+		}
+		int knownCounter = 0;
+		while (true) {
+			String knownId = configuration.getStringValue("Known" + type + "/" + knownCounter++ + "/ID").getValue(null);
+			if (knownId == null) {
+				break;
+			}
+			readState.addKnownId(null, knownId);
+		}
 	}
 
 	/**
-	 * {@inheritDoc}
-	 */
+	 * Loads the data of the given Sone from the configuration, where Sones
+	 * were stored before the {@link SoneStore} was used. The returned values
+	 * use the keys of the {@link SoneStore}.
+	 *
+	 * @param sone
+	 *            The Sone to load
+	 * @return The data of the Sone
+	 */
+	private Map<String, String> loadConfigurationSone(Sone sone) {
+		Map<String, String> values = new HashMap<String, String>();
+		String sonePrefix = "Sone/" + sone.getId();
+		synchronized (configuration) {
+			putStoredValue(values, "Time", configuration.getLongValue(sonePrefix + "/Time").getValue(null));
+			putStoredValue(values, "LastInsertFingerprint", configuration.getStringValue(sonePrefix + "/LastInsertFingerprint").getValue(null));
+			putStoredValue(values, "Profile/FirstName", configuration.getStringValue(sonePrefix + "/Profile/FirstName").getValue(null));
+			putStoredValue(values, "Profile/MiddleName", configuration.getStringValue(sonePrefix + "/Profile/MiddleName").getValue(null));
+			putStoredValue(values, "Profile/LastName", configuration.getStringValue(sonePrefix + "/Profile/LastName").getValue(null));
+			putStoredValue(values, "Profile/BirthDay", configuration.getIntValue(sonePrefix + "/Profile/BirthDay").getValue(null));
+			putStoredValue(values, "Profile/BirthMonth", configuration.getIntValue(sonePrefix + "/Profile/BirthMonth").getValue(null));
+			putStoredValue(values, "Profile/BirthYear", configuration.getIntValue(sonePrefix + "/Profile/BirthYear").getValue(null));
+			for (int fieldCounter = 0; true; ++fieldCounter) {
+				String fieldPrefix = sonePrefix + "/Profile/Fields/" + fieldCounter;
+				String fieldName = configuration.getStringValue(fieldPrefix + "/Name").getValue(null);
+				if (fieldName == null) {
+					break;
+				}
+				putStoredValue(values, "Profile/Fields/" + fieldCounter + "/Name", fieldName);
+				putStoredValue(values, "Profile/Fields/" + fieldCounter + "/Value", configuration.getStringValue(fieldPrefix + "/Value").getValue(null));
+			}
+			for (int postCounter = 0; true; ++postCounter) {
+				String postPrefix = sonePrefix + "/Posts/" + postCounter;
+				String postId = configuration.getStringValue(postPrefix + "/ID").getValue(null);
+				if (postId == null) {
+					break;
+				}
+				putStoredValue(values, "Posts/" + postId + "/Recipient", configuration.getStringValue(postPrefix + "/Recipient").getValue(null));
+				putStoredValue(values, "Posts/" + postId + "/Time", configuration.getLongValue(postPrefix + "/Time").getValue(null));
+				putStoredValue(values, "Posts/" + postId + "/Text", configuration.getStringValue(postPrefix + "/Text").getValue(null));
+			}
+			for (int replyCounter = 0; true; ++replyCounter) {
+				String replyPrefix = sonePrefix + "/Replies/" + replyCounter;
+				String replyId = configuration.getStringValue(replyPrefix + "/ID").getValue(null);
+				if (replyId == null) {
+					break;
+				}
+				putStoredValue(values, "Replies/" + replyId + "/Post", configuration.getStringValue(replyPrefix + "/Post/ID").getValue(null));
+				putStoredValue(values, "Replies/" + replyId + "/Time", configuration.getLongValue(replyPrefix + "/Time").getValue(null));
+				putStoredValue(values, "Replies/" + replyId + "/Text", configuration.getStringValue(replyPrefix + "/Text").getValue(null));
+			}
+			loadConfigurationIds(values, sonePrefix + "/Likes/Post/", "Likes/Post/");
+			loadConfigurationIds(values, sonePrefix + "/Likes/Reply/", "Likes/Reply/");
+			loadConfigurationIds(values, sonePrefix + "/Friends/", "Friends/");
+		}
+		return values;
+	}
+
+	/**
+	 * Loads a list of IDs from the configuration and stores them in the given
+	 * values, using the keys of the {@link SoneStore}.
+	 *
+	 * @param values
+	 *            The values to store the IDs in
+	 * @param configurationPrefix
+	 *            The prefix of the list in the configuration
+	 * @param storePrefix
+	 *            The prefix of the IDs in the values
+	 */
+	private void loadConfigurationIds(Map<String, String> values, String configurationPrefix, String storePrefix) {
+		for (int idCounter = 0; true; ++idCounter) {
+			String id = configuration.getStringValue(configurationPrefix + idCounter + "/ID").getValue(null);
+			if (id == null) {
+				break;
+			}
+			values.put(storePrefix + id, "");
+		}
+	}
+
+	/**
+	 * Removes the given Sone from the configuration once it has been written
+	 * to the {@link SoneStore}.
+	 *
+	 * @param sone
+	 *            The Sone to remove from the configuration
+	 */
+	private void removeConfigurationSone(Sone sone) {
+		String sonePrefix = "Sone/" + sone.getId();
+		synchronized (configuration) {
+			if (configuration.getLongValue(sonePrefix + "/Time").getValue(null) == null) {
+				return;
+			}
+			try {
+				configuration.getLongValue(sonePrefix + "/Time").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Profile/Fields/0/Name").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Posts/0/ID").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Replies/0/ID").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Likes/Post/0/ID").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Likes/Reply/0/ID").setValue(null);
+				configuration.getStringValue(sonePrefix + "/Friends/0/ID").setValue(null);
+				configuration.save();
+			} catch (ConfigurationException ce1) {
+				logger.log(Level.WARNING, "Could not remove Sone from configuration: " + sone, ce1);
+			}
+		}
+	}
+
+	/**
+	 * Loads the stored values of the given local Sone from the
+	 * {@link SoneStore}, or from the configuration if the Sone has not been
+	 * stored yet.
+	 *
+	 * @param sone
+	 *            The local Sone to load
+	 * @return The stored values of the Sone, or {@code null} if no Sone has
+	 *         been stored or the values could not be loaded
+	 */
+	private Map<String, String> loadSoneValues(Sone sone) {
+		Map<String, String> values;
+		try {
+			values = soneStore.load(sone.getId());
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not load Sone: " + sone, ioe1);
+			return null;
+		}
+		if (values == null) {
+			values = loadConfigurationSone(sone);
+		}
+		if (!values.containsKey("Time")) {
+			logger.log(Level.INFO, "Could not load Sone because no Sone has been saved.");
+			return null;
+		}
+		return values;
+	}
+
+	/**
+	 * Updates the given local Sone with the stored Sone and registers its
+	 * posts, replies, and likes. The caller has to hold the monitor of the
+	 * local Sone.
+	 *
+	 * @param sone
+	 *            The local Sone to update
+	 * @param storedSone
+	 *            The stored Sone, as returned by
+	 *            {@link #parseStoredSone(Sone, Map)}
+	 * @param values
+	 *            The stored values of the Sone
+	 */
+	private void applyStoredSone(Sone sone, Sone storedSone, Map<String, String> values) {
+		String lastInsertFingerprint = values.containsKey("LastInsertFingerprint") ? values.get("LastInsertFingerprint") : "";
+
+		/* load friends. */
+		Set<String> friends = new HashSet<String>();
+		for (String friendId : getStoredIds(values, "Friends/")) {
+			friends.add(internSoneId(friendId));
+		}
+
+		List<Post> posts = new ArrayList<Post>();
+		for (Post post : storedSone.getPosts()) {
+			Post internedPost = internPost(sone, post);
+			if (internedPost != null) {
+				posts.add(internedPost);
+			}
+		}
+		Set<Reply> replies = new HashSet<Reply>();
+		for (Reply reply : storedSone.getReplies()) {
+			Reply internedReply = internReply(sone, reply);
+			if (internedReply != null) {
+				replies.add(internedReply);
+			}
+		}
+		Set<String> likedPostIds = storedSone.getLikedPostIds();
+		Set<String> likedReplyIds = storedSone.getLikedReplyIds();
+		List<Post> oldPosts = sone.getPosts();
+		Set<String> oldLikedPostIds = sone.getLikedPostIds();
+		Set<String> oldLikedReplyIds = sone.getLikedReplyIds();
+		sone.setTime(storedSone.getTime());
+		sone.setProfile(storedSone.getProfile());
+		sone.setPosts(posts);
+		sone.setReplies(replies);
+		sone.setLikePostIds(likedPostIds);
+		sone.setLikeReplyIds(likedReplyIds);
+		sone.setFriends(friends);
+		soneInserters.get(sone).setLastInsertFingerprint(lastInsertFingerprint);
+		updateLikes(postLikes, sone, oldLikedPostIds, likedPostIds);
+		updateLikes(replyLikes, sone, oldLikedReplyIds, likedReplyIds);
+		for (String friendId : friends) {
+			addKnownSone(friendId);
+		}
+		for (Post post : posts) {
+			storePost(post);
+		}
+		for (Reply reply : replies) {
+			storeReply(reply);
+		}
+		updateTimelines(oldPosts, posts);
+		rebuildTimeline(sone);
+	}
+
+	/**
+	 * Loads the last downloaded state of the given remote Sone from the
+	 * cache.
+	 *
+	 * @param sone
+	 *            The remote Sone to load
+	 * @return The cached Sone, or {@code null} if the Sone is not cached or
+	 *         could not be loaded
+	 */
+	private Sone loadRemoteSone(Sone sone) {
+		Map<String, String> values;
+		try {
+			values = remoteSoneStore.load(sone.getId());
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not load cached Sone: " + sone, ioe1);
+			return null;
+		}
+		if ((values == null) || !values.containsKey("Time")) {
+			return null;
+		}
+		Sone cachedSone = parseStoredSone(sone, values);
+		if (cachedSone == null) {
+			return null;
+		}
+		String clientName = values.get("Client/Name");
+		String clientVersion = values.get("Client/Version");
+		if ((clientName != null) && (clientVersion != null)) {
+			cachedSone.setClient(new Client(clientName, clientVersion));
+		}
+		cachedSone.setLatestEdition(Numbers.safeParseLong(values.get("LatestEdition"), (long) 0));
+		return cachedSone;
+	}
+
+	/**
+	 * Writes the given remote Sone to the cache of downloaded Sones.
+	 *
+	 * @param sone
+	 *            The remote Sone to store
+	 * @return {@code true} if the Sone was stored or does not need to be
+	 *         stored, {@code false} if storing the Sone failed
+	 */
+	private boolean storeRemoteSone(Sone sone) {
+		synchronized (sone) {
+			if (sone.getTime() == 0) {
+				return true;
+			}
+			Map<String, String> values = getStoredValues(sone);
+			Client client = sone.getClient();
+			if (client != null) {
+				putStoredValue(values, "Client/Name", client.getName());
+				putStoredValue(values, "Client/Version", client.getVersion());
+			}
+			putStoredValue(values, "LatestEdition", sone.getLatestEdition());
+			try {
+				remoteSoneStore.save(sone.getId(), values);
+				return true;
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "Could not cache Sone: " + sone, ioe1);
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Returns the values that are stored for the given Sone. This contains
+	 * the time, the profile, the posts, the replies, and the likes of the
+	 * Sone.
+	 *
+	 * @param sone
+	 *            The Sone to store
+	 * @return The values of the Sone
+	 */
+	private static Map<String, String> getStoredValues(Sone sone) {
+		Map<String, String> values = new HashMap<String, String>();
+		putStoredValue(values, "Time", sone.getTime());
+
+		/* save profile. */
+		Profile profile = sone.getProfile();
+		putStoredValue(values, "Profile/FirstName", profile.getFirstName());
+		putStoredValue(values, "Profile/MiddleName", profile.getMiddleName());
+		putStoredValue(values, "Profile/LastName", profile.getLastName());
+		putStoredValue(values, "Profile/BirthDay", profile.getBirthDay());
+		putStoredValue(values, "Profile/BirthMonth", profile.getBirthMonth());
+		putStoredValue(values, "Profile/BirthYear", profile.getBirthYear());
+
+		/* save profile fields. */
+		int fieldCounter = 0;
+		for (Field profileField : profile.getFields()) {
+			String fieldPrefix = "Profile/Fields/" + fieldCounter++;
+			putStoredValue(values, fieldPrefix + "/Name", profileField.getName());
+			putStoredValue(values, fieldPrefix + "/Value", profileField.getValue());
+		}
+
+		/* save posts. */
+		for (Post post : sone.getPosts()) {
+			String postPrefix = "Posts/" + post.getId();
+			putStoredValue(values, postPrefix + "/Recipient", (post.getRecipient() != null) ? post.getRecipient().getId() : null);
+			putStoredValue(values, postPrefix + "/Time", post.getTime());
+			putStoredValue(values, postPrefix + "/Text", post.getText());
+		}
+
+		/* save replies. */
+		for (Reply reply : sone.getReplies()) {
+			String replyPrefix = "Replies/" + reply.getId();
+			putStoredValue(values, replyPrefix + "/Post", reply.getPost().getId());
+			putStoredValue(values, replyPrefix + "/Time", reply.getTime());
+			putStoredValue(values, replyPrefix + "/Text", reply.getText());
+		}
+
+		/* save post likes. */
+		for (String postId : sone.getLikedPostIds()) {
+			putStoredValue(values, "Likes/Post/" + postId, "");
+		}
+
+		/* save reply likes. */
+		for (String replyId : sone.getLikedReplyIds()) {
+			putStoredValue(values, "Likes/Reply/" + replyId, "");
+		}
+
+		return values;
+	}
+
+	/**
+	 * Creates a new Sone from the given stored values. The new Sone contains
+	 * the time, the profile, the posts, the replies, and the likes. Like a
+	 * downloaded Sone its posts and replies are not yet known to the core;
+	 * they are taken over by {@link #internPost(Sone, Post)} and
+	 * {@link #internReply(Sone, Reply)}.
+	 *
+	 * @param sone
+	 *            The Sone the values belong to
+	 * @param values
+	 *            The stored values
+	 * @return The parsed Sone, or {@code null} if the values are invalid
+	 */
+	private Sone parseStoredSone(Sone sone, Map<String, String> values) {
+		Long soneTime = Numbers.safeParseLong(values.get("Time"));
+		if (soneTime == null) {
+			logger.log(Level.WARNING, "Invalid time found, aborting load!");
+			return null;
+		}
+
+		Sone storedSone = new Sone(sone.getId()).setTime(soneTime);
+
+		/* load profile. */
+		Profile profile = new Profile();
+		profile.setFirstName(values.get("Profile/FirstName"));
+		profile.setMiddleName(values.get("Profile/MiddleName"));
+		profile.setLastName(values.get("Profile/LastName"));
+		profile.setBirthDay(Numbers.safeParseInteger(values.get("Profile/BirthDay")));
+		profile.setBirthMonth(Numbers.safeParseInteger(values.get("Profile/BirthMonth")));
+		profile.setBirthYear(Numbers.safeParseInteger(values.get("Profile/BirthYear")));
+
+		/* load profile fields. */
+		while (true) {
+			String fieldPrefix = "Profile/Fields/" + profile.getFields().size();
+			String fieldName = values.get(fieldPrefix + "/Name");
+			if (fieldName == null) {
+				break;
+			}
+			String fieldValue = values.containsKey(fieldPrefix + "/Value") ? values.get(fieldPrefix + "/Value") : "";
+			profile.addField(fieldName).setValue(fieldValue);
+		}
+
+		/* load posts. */
+		Set<Post> posts = new HashSet<Post>();
+		for (String postId : getStoredIds(values, "Posts/")) {
+			String postPrefix = "Posts/" + postId;
+			String postRecipientId = values.get(postPrefix + "/Recipient");
+			long postTime = Numbers.safeParseLong(values.get(postPrefix + "/Time"), (long) 0);
+			String postText = values.get(postPrefix + "/Text");
+			if ((postTime == 0) || (postText == null)) {
+				logger.log(Level.WARNING, "Invalid post found, aborting load!");
+				return null;
+			}
+			Post post = new Post(postId, storedSone, postTime, postText);
+			if ((postRecipientId != null) && (postRecipientId.length() == 43)) {
+				post.setRecipient(new Sone(postRecipientId));
+			}
+			posts.add(post);
+		}
+
+		/* load replies. */
+		Set<Reply> replies = new HashSet<Reply>();
+		for (String replyId : getStoredIds(values, "Replies/")) {
+			String replyPrefix = "Replies/" + replyId;
+			String postId = values.get(replyPrefix + "/Post");
+			long replyTime = Numbers.safeParseLong(values.get(replyPrefix + "/Time"), (long) 0);
+			String replyText = values.get(replyPrefix + "/Text");
+			if ((postId == null) || (replyTime == 0) || (replyText == null)) {
+				logger.log(Level.WARNING, "Invalid reply found, aborting load!");
+				return null;
+			}
+			replies.add(new Reply(replyId, storedSone, new Post(postId), replyTime, replyText));
+		}
+
+		/* load post likes. */
+		Set<String> likedPostIds = new HashSet<String>();
+		for (String likedPostId : getStoredIds(values, "Likes/Post/")) {
+			likedPostIds.add(internPostId(likedPostId));
+		}
+
+		/* load reply likes. */
+		Set<String> likedReplyIds = new HashSet<String>();
+		for (String likedReplyId : getStoredIds(values, "Likes/Reply/")) {
+			likedReplyIds.add(internReplyId(likedReplyId));
+		}
+
+		storedSone.setProfile(profile);
+		storedSone.setPosts(posts);
+		storedSone.setReplies(replies);
+		storedSone.setLikePostIds(likedPostIds);
+		storedSone.setLikeReplyIds(likedReplyIds);
+		return storedSone;
+	}
+
+	/**
+	 * Stores the given value under the given key, unless the value is
+	 * {@code null}.
+	 *
+	 * @param values
+	 *            The values to store the value in
+	 * @param key
+	 *            The key of the value
+	 * @param value
+	 *            The value to store
+	 */
+	private static void putStoredValue(Map<String, String> values, String key, Object value) {
+		if (value != null) {
+			values.put(key, String.valueOf(value));
+		}
+	}
+
+	/**
+	 * Returns the IDs contained in the keys of the given values that start
+	 * with the given prefix. The ID is the part of the key between the prefix
+	 * and the next slash.
+	 *
+	 * @param values
+	 *            The values
+	 * @param prefix
+	 *            The prefix of the keys
+	 * @return The IDs
+	 */
+	private static Set<String> getStoredIds(Map<String, String> values, String prefix) {
+		Set<String> ids = new HashSet<String>();
+		for (String key : values.keySet()) {
+			if (key.startsWith(prefix)) {
+				int slash = key.indexOf('/', prefix.length());
+				ids.add((slash == -1) ? key.substring(prefix.length()) : key.substring(prefix.length(), slash));
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns whether the given downloaded post differs from the stored post
+	 * with the same ID.
+	 *
+	 * @param storedPost
+	 *            The stored post
+	 * @param post
+	 *            The downloaded post
+	 * @return {@code true} if the time, the text, or the recipient of the
+	 *         post have changed, {@code false} otherwise
+	 */
+	private static boolean isChangedPost(Post storedPost, Post post) {
+		if ((storedPost.getTime() != post.getTime()) || !equal(storedPost.getText(), post.getText())) {
+			return true;
+		}
+		String storedRecipientId = (storedPost.getRecipient() == null) ? null : storedPost.getRecipient().getId();
+		String recipientId = (post.getRecipient() == null) ? null : post.getRecipient().getId();
+		return !equal(storedRecipientId, recipientId);
+	}
+
+	/**
+	 * Returns whether the given downloaded reply differs from the stored reply
+	 * with the same ID.
+	 *
+	 * @param storedReply
+	 *            The stored reply
+	 * @param reply
+	 *            The downloaded reply
+	 * @return {@code true} if the time, the text, or the post of the reply
+	 *         have changed, {@code false} otherwise
+	 */
+	private static boolean isChangedReply(Reply storedReply, Reply reply) {
+		if ((storedReply.getTime() != reply.getTime()) || !equal(storedReply.getText(), reply.getText())) {
+			return true;
+		}
+		String storedPostId = (storedReply.getPost() == null) ? null : storedReply.getPost().getId();
+		return !equal(storedPostId, reply.getPost().getId());
+	}
+
+	/**
+	 * Returns whether the two given objects are equal. Two {@code null}
+	 * objects are equal.
+	 *
+	 * @param first
+	 *            The first object
+	 * @param second
+	 *            The second object
+	 * @return {@code true} if both objects are {@code null} or equal,
+	 *         {@code false} otherwise
+	 */
+	private static boolean equal(Object first, Object second) {
+		return (first == null) ? (second == null) : first.equals(second);
+	}
+
+	/**
+	 * Takes over the given post of a downloaded or loaded Sone. The values of
+	 * the post are copied to the post known to the core, which is created if
+	 * necessary, so that the post is the same object everywhere. A post that
+	 * belongs to a different Sone is not taken over.
+	 *
+	 * @param sone
+	 *            The Sone the post belongs to
+	 * @param post
+	 *            The post that is not yet known to the core
+	 * @return The post known to the core, or {@code null} if the post belongs
+	 *         to a different Sone
+	 */
+	private Post internPost(Sone sone, Post post) {
+		Post storedPost = getPost(post.getId());
+		Sone postSone = storedPost.getSone();
+		if ((postSone != null) && !postSone.equals(sone)) {
+			logger.log(Level.WARNING, "Sone %s tried to take over post %s of Sone %s!", new Object[] { sone, post.getId(), postSone });
+			return null;
+		}
+		storedPost.setSone(sone).setTime(post.getTime()).setText(post.getText());
+		storedPost.setRecipient((post.getRecipient() == null) ? null : getSone(post.getRecipient().getId()));
+		return storedPost;
+	}
+
+	/**
+	 * Takes over the given reply of a downloaded or loaded Sone. The values of
+	 * the reply are copied to the reply known to the core, which is created if
+	 * necessary, and the reply is changed to refer to the post known to the
+	 * core. A reply that belongs to a different Sone is not taken over.
+	 *
+	 * @param sone
+	 *            The Sone the reply belongs to
+	 * @param reply
+	 *            The reply that is not yet known to the core
+	 * @return The reply known to the core, or {@code null} if the reply
+	 *         belongs to a different Sone
+	 */
+	private Reply internReply(Sone sone, Reply reply) {
+		Reply storedReply = getReply(reply.getId());
+		Sone replySone = storedReply.getSone();
+		if ((replySone != null) && !replySone.equals(sone)) {
+			logger.log(Level.WARNING, "Sone %s tried to take over reply %s of Sone %s!", new Object[] { sone, reply.getId(), replySone });
+			return null;
+		}
+		storedReply.setSone(sone).setPost(getPost(reply.getPost().getId())).setTime(reply.getTime()).setText(reply.getText());
+		return storedReply;
+	}
+
+	/**
+	 * Stores the given post with all other posts and removes its placeholder.
+	 * Replies that still refer to an evicted placeholder of the post are
+	 * changed to refer to the given post.
+	 *
+	 * @param post
+	 *            The post to store
+	 */
+	private void storePost(Post post) {
+		posts.put(post.getId(), post);
+		postPlaceholders.remove(post.getId());
+		synchronized (postReplies) {
+			List<Reply> replies = postReplies.get(post.getId());
+			if (replies != null) {
+				for (Reply reply : replies) {
+					if (reply.getPost() != post) {
+						reply.setPost(post);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the given reply with all other replies, removes its placeholder,
+	 * and adds it to the reply index. If the post the reply refers to is
+	 * already known the reply is changed to refer to it.
+	 *
+	 * @param reply
+	 *            The reply to store
+	 */
+	private void storeReply(Reply reply) {
+		Post post = (reply.getPost() == null) ? null : posts.get(reply.getPost().getId());
+		if ((post != null) && (reply.getPost() != post)) {
+			reply.setPost(post);
+		}
+		replies.put(reply.getId(), reply);
+		replyPlaceholders.remove(reply.getId());
+		addReplyToIndex(reply);
+	}
+
+	/**
+	 * Adds the given reply to the reply index of the post it refers to. The
+	 * replies of a post are kept sorted by time, oldest first. If the reply is
+	 * already indexed it is moved to its new position.
+	 *
+	 * @param reply
+	 *            The reply to add
+	 */
+	private void addReplyToIndex(Reply reply) {
+		Post post = reply.getPost();
+		if (post == null) {
+			return;
+		}
+		synchronized (postReplies) {
+			List<Reply> replies = postReplies.get(post.getId());
+			if (replies == null) {
+				replies = new ArrayList<Reply>();
+				postReplies.put(post.getId(), replies);
+			}
+			replies.remove(reply);
+			int index = Collections.binarySearch(replies, reply, Reply.TIME_COMPARATOR);
+			replies.add((index < 0) ? (-index - 1) : index, reply);
+		}
+	}
+
+	/**
+	 * Removes the given reply from the reply index of the post it refers to.
+	 *
+	 * @param reply
+	 *            The reply to remove
+	 */
+	private void removeReplyFromIndex(Reply reply) {
+		Post post = reply.getPost();
+		if (post == null) {
+			return;
+		}
+		synchronized (postReplies) {
+			List<Reply> replies = postReplies.get(post.getId());
+			if (replies == null) {
+				return;
+			}
+			replies.remove(reply);
+			if (replies.isEmpty()) {
+				postReplies.remove(post.getId());
+			}
+		}
+	}
+
+	/**
+	 * Returns the ID of the known Sone with the given ID, so that all
+	 * references to a Sone share a single string instance.
+	 *
+	 * @param soneId
+	 *            The ID of a Sone
+	 * @return The ID of the known Sone, or the given ID if the Sone is not
+	 *         known
+	 */
+	private String internSoneId(String soneId) {
+		Sone sone = isLocalSone(soneId) ? localSones.get(soneId) : remoteSones.get(soneId);
+		return (sone != null) ? sone.getId() : soneId;
+	}
+
+	/**
+	 * Returns the ID of the known post with the given ID, so that all
+	 * references to a post share a single string instance.
+	 *
+	 * @param postId
+	 *            The ID of a post
+	 * @return The ID of the known post, or the given ID if the post is not
+	 *         known
+	 */
+	private String internPostId(String postId) {
+		Post post = posts.get(postId);
+		return (post != null) ? post.getId() : postId;
+	}
+
+	/**
+	 * Returns the ID of the known reply with the given ID, so that all
+	 * references to a reply share a single string instance.
+	 *
+	 * @param replyId
+	 *            The ID of a reply
+	 * @return The ID of the known reply, or the given ID if the reply is not
+	 *         known
+	 */
+	private String internReplyId(String replyId) {
+		Reply reply = replies.get(replyId);
+		return (reply != null) ? reply.getId() : replyId;
+	}
+
+	/**
+	 * Returns a copy of the Sones liking the element with the given ID.
+	 *
+	 * @param likes
+	 *            The like index to use
+	 * @param id
+	 *            The ID of the post or reply
+	 * @return The Sones liking the element with the given ID
+	 */
+	private Set<Sone> getLikes(Map<String, Set<Sone>> likes, String id) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(id);
+			if (sones == null) {
+				return new HashSet<Sone>();
+			}
+			return new HashSet<Sone>(sones);
+		}
+	}
+
+	/**
+	 * Returns the number of Sones liking the element with the given ID.
+	 *
+	 * @param likes
+	 *            The like index to use
+	 * @param id
+	 *            The ID of the post or reply
+	 * @return The number of Sones liking the element with the given ID
+	 */
+	private int getLikeCount(Map<String, Set<Sone>> likes, String id) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(id);
+			return (sones == null) ? 0 : sones.size();
+		}
+	}
+
+	/**
+	 * Records that the given Sone likes the element with the given ID.
+	 *
+	 * @param likes
+	 *            The like index to update
+	 * @param sone
+	 *            The liking Sone
+	 * @param id
+	 *            The ID of the liked post or reply
+	 */
+	private void addLike(Map<String, Set<Sone>> likes, Sone sone, String id) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(id);
+			if (sones == null) {
+				sones = new HashSet<Sone>();
+				likes.put(id, sones);
+			}
+			sones.add(sone);
+		}
+	}
+
+	/**
+	 * Records that the given Sone does not like the element with the given ID
+	 * anymore.
+	 *
+	 * @param likes
+	 *            The like index to update
+	 * @param sone
+	 *            The Sone
+	 * @param id
+	 *            The ID of the post or reply
+	 */
+	private void removeLike(Map<String, Set<Sone>> likes, Sone sone, String id) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(id);
+			if (sones == null) {
+				return;
+			}
+			sones.remove(sone);
+			if (sones.isEmpty()) {
+				likes.remove(id);
+			}
+		}
+	}
+
+	/**
+	 * Updates the like index for a Sone whose liked IDs changed from
+	 * {@code oldIds} to {@code newIds}.
+	 *
+	 * @param likes
+	 *            The like index to update
+	 * @param sone
+	 *            The Sone whose likes changed
+	 * @param oldIds
+	 *            The previously liked IDs
+	 * @param newIds
+	 *            The currently liked IDs
+	 */
+	private void updateLikes(Map<String, Set<Sone>> likes, Sone sone, Collection<String> oldIds, Collection<String> newIds) {
+		synchronized (likes) {
+			for (String oldId : oldIds) {
+				if (!newIds.contains(oldId)) {
+					removeLike(likes, sone, oldId);
+				}
+			}
+			for (String newId : newIds) {
+				if (!oldIds.contains(newId)) {
+					addLike(likes, sone, newId);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Updates the liked post IDs of the given stored Sone, and the like index,
+	 * with the given liked post IDs. Only the differences are applied.
+	 *
+	 * @param storedSone
+	 *            The stored Sone to update
+	 * @param likedPostIds
+	 *            The liked post IDs of the downloaded Sone
+	 * @param removeMissing
+	 *            {@code true} to also remove post IDs that are not contained
+	 *            in {@code likedPostIds}, {@code false} to only add post IDs
+	 * @return {@code true} if any liked post IDs were added or removed,
+	 *         {@code false} otherwise
+	 */
+	private boolean updateLikedPostIds(Sone storedSone, Set<String> likedPostIds, boolean removeMissing) {
+		Set<String> storedLikedPostIds = storedSone.getLikedPostIds();
+		boolean changed = false;
+		for (String likedPostId : likedPostIds) {
+			if (!storedLikedPostIds.contains(likedPostId)) {
+				String postId = internPostId(likedPostId);
+				storedSone.addLikedPostId(postId);
+				addLike(postLikes, storedSone, postId);
+				changed = true;
+			}
+		}
+		if (removeMissing) {
+			for (String storedLikedPostId : storedLikedPostIds) {
+				if (!likedPostIds.contains(storedLikedPostId)) {
+					storedSone.removeLikedPostId(storedLikedPostId);
+					removeLike(postLikes, storedSone, storedLikedPostId);
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Updates the liked reply IDs of the given stored Sone, and the like index,
+	 * with the given liked reply IDs. Only the differences are applied.
+	 *
+	 * @param storedSone
+	 *            The stored Sone to update
+	 * @param likedReplyIds
+	 *            The liked reply IDs of the downloaded Sone
+	 * @param removeMissing
+	 *            {@code true} to also remove reply IDs that are not contained
+	 *            in {@code likedReplyIds}, {@code false} to only add reply IDs
+	 * @return {@code true} if any liked reply IDs were added or removed,
+	 *         {@code false} otherwise
+	 */
+	private boolean updateLikedReplyIds(Sone storedSone, Set<String> likedReplyIds, boolean removeMissing) {
+		Set<String> storedLikedReplyIds = storedSone.getLikedReplyIds();
+		boolean changed = false;
+		for (String likedReplyId : likedReplyIds) {
+			if (!storedLikedReplyIds.contains(likedReplyId)) {
+				String replyId = internReplyId(likedReplyId);
+				storedSone.addLikedReplyId(replyId);
+				addLike(replyLikes, storedSone, replyId);
+				changed = true;
+			}
+		}
+		if (removeMissing) {
+			for (String storedLikedReplyId : storedLikedReplyIds) {
+				if (!likedReplyIds.contains(storedLikedReplyId)) {
+					storedSone.removeLikedReplyId(storedLikedReplyId);
+					removeLike(replyLikes, storedSone, storedLikedReplyId);
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns whether the given post belongs in the timeline of the given
+	 * local Sone.
+	 *
+	 * @param localSone
+	 *            The local Sone
+	 * @param post
+	 *            The post to check
+	 * @return {@code true} if the post was posted by the local Sone, by a Sone
+	 *         it follows, or is directed at the local Sone, {@code false}
+	 *         otherwise
+	 */
+	private boolean isInTimeline(Sone localSone, Post post) {
+		Sone postSone = post.getSone();
+		if (postSone == null) {
+			return false;
+		}
+		return localSone.equals(postSone) || localSone.hasFriend(postSone.getId()) || localSone.equals(post.getRecipient());
+	}
+
+	/**
+	 * Updates the timelines of all local Sones after a set of posts has been
+	 * replaced by another set of posts.
+	 *
+	 * @param oldPosts
+	 *            The posts to remove from the timelines
+	 * @param newPosts
+	 *            The posts to add to the timelines
+	 */
+	private void updateTimelines(Collection<Post> oldPosts, Collection<Post> newPosts) {
+		for (Sone localSone : getLocalSones()) {
+			Timeline timeline = timelines.get(localSone.getId());
+			if (timeline == null) {
+				continue;
+			}
+			synchronized (timeline) {
+				timeline.removePosts(oldPosts);
+				for (Post post : newPosts) {
+					if (isInTimeline(localSone, post)) {
+						timeline.addPost(post);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates the timeline of the given local Sone from the posts of all
+	 * known Sones.
+	 *
+	 * @param localSone
+	 *            The local Sone to create the timeline for
+	 */
+	private void rebuildTimeline(Sone localSone) {
+		Timeline timeline = new Timeline();
+		/* Sones that are updated meanwhile add their posts after we’re done. */
+		synchronized (timeline) {
+			timelines.put(localSone.getId(), timeline);
+			for (Sone sone : getSones()) {
+				for (Post post : sone.getPosts()) {
+					if (isInTimeline(localSone, post)) {
+						timeline.addPost(post);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generate a Sone URI from the given URI and latest edition.
+	 *
+	 * @param uriString
+	 *            The URI to derive the Sone URI from
+	 * @return The derived URI
+	 */
+	private FreenetURI getSoneUri(String uriString) {
+		try {
+			FreenetURI uri = new FreenetURI(uriString).setDocName("Sone").setMetaString(new String[0]);
+			return uri;
+		} catch (MalformedURLException mue1) {
+			logger.log(Level.WARNING, "Could not create Sone URI from URI: " + uriString, mue1);
+			return null;
+		}
+	}
+
+	//
+	// INTERFACE IdentityListener
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
 	@Override
-	public void identityUpdated(OwnIdentity ownIdentity, final Identity identity) {
-		new Thread(new Runnable() {
+	public void ownIdentityAdded(final OwnIdentity ownIdentity) {
+		logger.log(Level.FINEST, "Adding OwnIdentity: " + ownIdentity);
+		if (ownIdentity.hasContext("Sone")) {
+			trustedIdentities.put(ownIdentity, Collections.synchronizedSet(new HashSet<Identity>()));
+			try {
+				localSoneLoader.execute(new Runnable() {
 
-			@Override
-			@SuppressWarnings("synthetic-access")
-			public void run() {
-				Sone sone = getRemoteSone(identity.getId());
-				sone.setIdentity(identity);
-				soneDownloader.fetchSone(sone);
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public void run() {
+						addLocalSone(ownIdentity);
+					}
+
+				});
+			} catch (RejectedExecutionException ree1) {
+				logger.log(Level.FINE, "Not adding Sone of %s, core is stopped.", ownIdentity);
 			}
-		}).start();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void ownIdentityRemoved(OwnIdentity ownIdentity) {
+		logger.log(Level.FINEST, "Removing OwnIdentity: " + ownIdentity);
+		trustedIdentities.remove(ownIdentity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void identityAdded(OwnIdentity ownIdentity, Identity identity) {
+		logger.log(Level.FINEST, "Adding Identity: " + identity);
+		trustedIdentities.get(ownIdentity).add(identity);
+		addRemoteSone(identity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void identityUpdated(OwnIdentity ownIdentity, Identity identity) {
+		Sone sone = getRemoteSone(identity.getId());
+		sone.setIdentity(identity);
+		soneDownloader.scheduleFetch(sone);
 	}
 
 	/**
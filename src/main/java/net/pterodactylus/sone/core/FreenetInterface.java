@@ -30,12 +30,15 @@ import net.pterodactylus.util.logging.Logging;
 
 import com.db4o.ObjectContainer;
 
+import freenet.client.FetchContext;
 import freenet.client.FetchException;
 import freenet.client.FetchResult;
 import freenet.client.HighLevelSimpleClient;
 import freenet.client.HighLevelSimpleClientImpl;
 import freenet.client.InsertException;
 import freenet.client.async.ClientContext;
+import freenet.client.async.ClientGetCallback;
+import freenet.client.async.ClientGetter;
 import freenet.client.async.USKCallback;
 import freenet.keys.FreenetURI;
 import freenet.keys.USK;
@@ -59,7 +62,7 @@ public class FreenetInterface {
 	private final HighLevelSimpleClient client;
 
 	/** The USK callbacks. */
-	private final Map<String, USKCallback> soneUskCallbacks = new HashMap<String, USKCallback>();
+	private final Map<String, SoneUskCallback> soneUskCallbacks = Collections.synchronizedMap(new HashMap<String, SoneUskCallback>());
 
 	/** The not-Sone-related USK callbacks. */
 	private final Map<FreenetURI, USKCallback> uriUskCallbacks = Collections.synchronizedMap(new HashMap<FreenetURI, USKCallback>());
@@ -87,23 +90,107 @@ public class FreenetInterface {
 	 * @return The result of the fetch, or {@code null} if an error occured
 	 */
 	public Pair<FreenetURI, FetchResult> fetchUri(FreenetURI uri) {
+		try {
+			return fetchUri(uri, -1);
+		} catch (FetchException fe1) {
+			/* can not happen without a size limit. */
+			return null;
+		}
+	}
+
+	/**
+	 * Fetches the given URI. If the result is larger than the given maximum
+	 * size, Freenet aborts the fetch as soon as it knows the size, before the
+	 * data is downloaded completely.
+	 *
+	 * @param uri
+	 *            The URI to fetch
+	 * @param maximumSize
+	 *            The maximum size of the result (in bytes), or {@code -1} for
+	 *            the default maximum size
+	 * @return The result of the fetch, or {@code null} if an error occured
+	 * @throws FetchException
+	 *             if the result is larger than the maximum size
+	 */
+	public Pair<FreenetURI, FetchResult> fetchUri(FreenetURI uri, long maximumSize) throws FetchException {
 		FetchResult fetchResult = null;
 		FreenetURI currentUri = new FreenetURI(uri);
 		while (true) {
 			try {
-				fetchResult = client.fetch(currentUri);
+				fetchResult = (maximumSize < 0) ? client.fetch(currentUri) : client.fetch(currentUri, maximumSize);
 				return new Pair<FreenetURI, FetchResult>(currentUri, fetchResult);
 			} catch (FetchException fe1) {
 				if (fe1.getMode() == FetchException.PERMANENT_REDIRECT) {
 					currentUri = fe1.newURI;
 					continue;
 				}
+				if ((maximumSize >= 0) && (fe1.getMode() == FetchException.TOO_BIG)) {
+					throw fe1;
+				}
 				logger.log(Level.WARNING, "Could not fetch “" + uri + "”!", fe1);
 				return null;
 			}
 		}
 	}
 
+	/**
+	 * Starts fetching the given URI and returns immediately. The given
+	 * callback is notified when the fetch has finished; while the fetch is
+	 * running, no thread is blocked. Permanent redirects are followed. If the
+	 * result is larger than the given maximum size, Freenet aborts the fetch
+	 * as soon as it knows the size.
+	 * <p>
+	 * The callback is called on a thread of the node, so it should not
+	 * perform any lengthy operations itself.
+	 *
+	 * @param uri
+	 *            The URI to fetch
+	 * @param maximumSize
+	 *            The maximum size of the result (in bytes), or {@code -1} for
+	 *            the default maximum size
+	 * @param fetchCallback
+	 *            The callback to notify when the fetch has finished
+	 */
+	public void fetchUri(final FreenetURI uri, final long maximumSize, final FetchCallback fetchCallback) {
+		FetchContext fetchContext = client.getFetchContext();
+		if (maximumSize >= 0) {
+			fetchContext.maxOutputLength = maximumSize;
+			fetchContext.maxTempLength = maximumSize;
+		}
+		ClientGetCallback clientGetCallback = new ClientGetCallback() {
+
+			@Override
+			public void onSuccess(FetchResult fetchResult, ClientGetter clientGetter, ObjectContainer objectContainer) {
+				fetchCallback.fetchSucceeded(uri, fetchResult);
+			}
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void onFailure(FetchException fetchException, ClientGetter clientGetter, ObjectContainer objectContainer) {
+				if (fetchException.getMode() == FetchException.PERMANENT_REDIRECT) {
+					fetchUri(fetchException.newURI, maximumSize, fetchCallback);
+					return;
+				}
+				if (fetchException.getMode() != FetchException.TOO_BIG) {
+					logger.log(Level.WARNING, "Could not fetch “" + uri + "”!", fetchException);
+				}
+				fetchCallback.fetchFailed(uri, fetchException);
+			}
+
+			@Override
+			public void onMajorProgress(ObjectContainer objectContainer) {
+				/* ignore. */
+			}
+
+		};
+		try {
+			client.fetch(new FreenetURI(uri), (maximumSize < 0) ? fetchContext.maxOutputLength : maximumSize, (HighLevelSimpleClientImpl) client, clientGetCallback, fetchContext);
+		} catch (FetchException fe1) {
+			logger.log(Level.WARNING, "Could not start fetch of “" + uri + "”!", fe1);
+			fetchCallback.fetchFailed(uri, fe1);
+		}
+	}
+
 	/**
 	 * Creates a key pair.
 	 *
@@ -135,46 +222,35 @@ public class FreenetInterface {
 		}
 	}
 
+	/**
+	 * Registers the USK for the given Sone in the {@link PollingTier#ACTIVE
+	 * active} polling tier and notifies the given {@link SoneDownloader} if an
+	 * update was found.
+	 *
+	 * @param sone
+	 *            The Sone to watch
+	 * @param soneDownloader
+	 *            The Sone download to notify on updates
+	 */
+	public void registerUsk(Sone sone, SoneDownloader soneDownloader) {
+		registerUsk(sone, PollingTier.ACTIVE, soneDownloader);
+	}
+
 	/**
 	 * Registers the USK for the given Sone and notifies the given
 	 * {@link SoneDownloader} if an update was found.
 	 *
 	 * @param sone
 	 *            The Sone to watch
+	 * @param pollingTier
+	 *            The polling tier of the Sone
 	 * @param soneDownloader
 	 *            The Sone download to notify on updates
 	 */
-	public void registerUsk(final Sone sone, final SoneDownloader soneDownloader) {
+	public void registerUsk(Sone sone, PollingTier pollingTier, SoneDownloader soneDownloader) {
 		try {
 			logger.log(Level.FINE, "Registering Sone “%s” for USK updates at %s…", new Object[] { sone, sone.getRequestUri().setMetaString(new String[] { "sone.xml" }) });
-			USKCallback uskCallback = new USKCallback() {
-
-				@Override
-				@SuppressWarnings("synthetic-access")
-				public void onFoundEdition(long edition, USK key, ObjectContainer objectContainer, ClientContext clientContext, boolean metadata, short codec, byte[] data, boolean newKnownGood, boolean newSlotToo) {
-					logger.log(Level.FINE, "Found USK update for Sone “%s” at %s, new known good: %s, new slot too: %s.", new Object[] { sone, key, newKnownGood, newSlotToo });
-					if (newKnownGood) {
-						sone.setLatestEdition(key.suggestedEdition);
-						new Thread(new Runnable() {
-
-							@Override
-							public void run() {
-								soneDownloader.fetchSone(sone);
-							}
-						}, "Sone Downloader").start();
-					}
-				}
-
-				@Override
-				public short getPollingPriorityProgress() {
-					return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
-				}
-
-				@Override
-				public short getPollingPriorityNormal() {
-					return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
-				}
-			};
+			SoneUskCallback uskCallback = new SoneUskCallback(sone, soneDownloader, pollingTier);
 			soneUskCallbacks.put(sone.getId(), uskCallback);
 			node.clientCore.uskManager.subscribe(USK.create(sone.getRequestUri()), uskCallback, true, (HighLevelSimpleClientImpl) client);
 		} catch (MalformedURLException mue1) {
@@ -182,6 +258,32 @@ public class FreenetInterface {
 		}
 	}
 
+	/**
+	 * Moves the USK subscription of the given Sone to the given polling tier.
+	 * The USK is unsubscribed and subscribed again with the priorities of the
+	 * new tier; nothing happens if the Sone is already in the given tier.
+	 *
+	 * @param sone
+	 *            The Sone to move
+	 * @param pollingTier
+	 *            The new polling tier of the Sone
+	 */
+	public void setPollingTier(Sone sone, PollingTier pollingTier) {
+		SoneUskCallback uskCallback = soneUskCallbacks.get(sone.getId());
+		if ((uskCallback == null) || (uskCallback.pollingTier == pollingTier)) {
+			return;
+		}
+		try {
+			logger.log(Level.FINE, "Moving Sone %s from polling tier %s to %s.", new Object[] { sone, uskCallback.pollingTier, pollingTier });
+			USK usk = USK.create(sone.getRequestUri());
+			node.clientCore.uskManager.unsubscribe(usk, uskCallback);
+			uskCallback.pollingTier = pollingTier;
+			node.clientCore.uskManager.subscribe(usk, uskCallback, true, (HighLevelSimpleClientImpl) client);
+		} catch (MalformedURLException mue1) {
+			logger.log(Level.WARNING, "Could not resubscribe USK “" + sone.getRequestUri() + "”!", mue1);
+		}
+	}
+
 	/**
 	 * Unsubscribes the request URI of the given Sone.
 	 *
@@ -189,7 +291,7 @@ public class FreenetInterface {
 	 *            The Sone to unregister
 	 */
 	public void unregisterUsk(Sone sone) {
-		USKCallback uskCallback = soneUskCallbacks.remove(sone.getId());
+		SoneUskCallback uskCallback = soneUskCallbacks.remove(sone.getId());
 		if (uskCallback == null) {
 			return;
 		}
@@ -256,6 +358,154 @@ public class FreenetInterface {
 		}
 	}
 
+	/**
+	 * The polling tiers of Sone USKs. The tier determines the priorities with
+	 * which the node polls for new editions of a Sone.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static enum PollingTier {
+
+		/** Sones that are followed or have been updated recently. */
+		ACTIVE(RequestStarter.INTERACTIVE_PRIORITY_CLASS, RequestStarter.INTERACTIVE_PRIORITY_CLASS),
+
+		/** Sones that have not been updated for a long time. */
+		DORMANT(RequestStarter.PREFETCH_PRIORITY_CLASS, RequestStarter.UPDATE_PRIORITY_CLASS);
+
+		/** The polling priority while no edition is being fetched. */
+		private final short normalPriority;
+
+		/** The polling priority while an edition is being fetched. */
+		private final short progressPriority;
+
+		/**
+		 * Creates a new polling tier.
+		 *
+		 * @param normalPriority
+		 *            The polling priority while no edition is being fetched
+		 * @param progressPriority
+		 *            The polling priority while an edition is being fetched
+		 */
+		private PollingTier(short normalPriority, short progressPriority) {
+			this.normalPriority = normalPriority;
+			this.progressPriority = progressPriority;
+		}
+
+		/**
+		 * Returns the polling priority while no edition is being fetched.
+		 *
+		 * @return The normal polling priority
+		 */
+		public short getNormalPriority() {
+			return normalPriority;
+		}
+
+		/**
+		 * Returns the polling priority while an edition is being fetched.
+		 *
+		 * @return The progress polling priority
+		 */
+		public short getProgressPriority() {
+			return progressPriority;
+		}
+
+	}
+
+	/**
+	 * USK callback for a Sone that notifies a {@link SoneDownloader} about new
+	 * editions and polls with the priorities of the Sone’s
+	 * {@link PollingTier}.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class SoneUskCallback implements USKCallback {
+
+		/** The Sone. */
+		private final Sone sone;
+
+		/** The Sone downloader to notify. */
+		private final SoneDownloader soneDownloader;
+
+		/** The polling tier of the Sone. */
+		private volatile PollingTier pollingTier;
+
+		/**
+		 * Creates a new USK callback for a Sone.
+		 *
+		 * @param sone
+		 *            The Sone
+		 * @param soneDownloader
+		 *            The Sone downloader to notify
+		 * @param pollingTier
+		 *            The polling tier of the Sone
+		 */
+		public SoneUskCallback(Sone sone, SoneDownloader soneDownloader, PollingTier pollingTier) {
+			this.sone = sone;
+			this.soneDownloader = soneDownloader;
+			this.pollingTier = pollingTier;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void onFoundEdition(long edition, USK key, ObjectContainer objectContainer, ClientContext clientContext, boolean metadata, short codec, byte[] data, boolean newKnownGood, boolean newSlotToo) {
+			logger.log(Level.FINE, "Found USK update for Sone “%s” at %s, new known good: %s, new slot too: %s.", new Object[] { sone, key, newKnownGood, newSlotToo });
+			if (newKnownGood) {
+				sone.setLatestEdition(key.suggestedEdition);
+				soneDownloader.scheduleFetch(sone);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public short getPollingPriorityProgress() {
+			return pollingTier.getProgressPriority();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public short getPollingPriorityNormal() {
+			return pollingTier.getNormalPriority();
+		}
+
+	}
+
+	/**
+	 * Callback for the results of {@link FreenetInterface#fetchUri(FreenetURI,
+	 * long, FetchCallback) asynchronous fetches}.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static interface FetchCallback {
+
+		/**
+		 * Notifies a listener that a fetch has succeeded.
+		 *
+		 * @param uri
+		 *            The URI that was fetched (after following redirects)
+		 * @param fetchResult
+		 *            The result of the fetch
+		 */
+		public void fetchSucceeded(FreenetURI uri, FetchResult fetchResult);
+
+		/**
+		 * Notifies a listener that a fetch has failed.
+		 *
+		 * @param uri
+		 *            The URI that could not be fetched
+		 * @param fetchException
+		 *            The exception that caused the failure
+		 */
+		public void fetchFailed(FreenetURI uri, FetchException fetchException);
+
+	}
+
 	/**
 	 * Callback for USK watcher events.
 	 *
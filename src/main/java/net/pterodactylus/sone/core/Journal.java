@@ -0,0 +1,569 @@
+/*
+ * FreenetSone - Journal.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.logging.Logging;
+import net.pterodactylus.util.number.Numbers;
+
+/**
+ * Persistent map of string keys to string values that is stored in a
+ * snapshot file and a journal file. Changes are collected with
+ * {@link #put(String, String)} and {@link #remove(String)} and appended to the
+ * journal by {@link #flush()}; once the journal has grown too large, the
+ * owner of the journal writes a new {@link #writeSnapshot(Map) snapshot}
+ * which replaces the journal.
+ * <p>
+ * Both files consist of one record per line. Every record starts with the
+ * CRC32 of the rest of the line so that a record that was only partially
+ * written can be detected; loading stops at the first invalid record.
+ * <p>
+ * Every snapshot starts with a generation record, and the journal records
+ * that belong to a snapshot are preceded by a record with the same
+ * generation. Journal records of an older generation, e.g. from a journal
+ * that could not be removed because of a crash after a new snapshot was
+ * written, are ignored when loading.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Journal {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(Journal.class);
+
+	/** The UTF-8 charset. */
+	private static final Charset utf8Charset = Charset.forName("UTF-8");
+
+	/** The minimum number of journal records before a snapshot is needed. */
+	private static final int MINIMUM_JOURNAL_SIZE = 1000;
+
+	/** The directory the files are stored in. */
+	private final File directory;
+
+	/** The name of the files. */
+	private final String name;
+
+	/** The changes that have not been written yet, {@code null} for removals. */
+	/* synchronize access on this. */
+	private final Map<String, String> pendingChanges = new LinkedHashMap<String, String>();
+
+	/** The number of records in the journal file. */
+	/* synchronize access on this. */
+	private int size;
+
+	/** Whether the journal file might end in a damaged record. */
+	/* synchronize access on this. */
+	private boolean damaged;
+
+	/** The generation of the current snapshot. */
+	/* synchronize access on this. */
+	private long generation;
+
+	/** The generation of the last records in the journal file. */
+	/* synchronize access on this. */
+	private long journalGeneration = -1;
+
+	/**
+	 * Creates a new journal.
+	 *
+	 * @param directory
+	 *            The directory to store the files in
+	 * @param name
+	 *            The name of the files
+	 */
+	public Journal(File directory, String name) {
+		this.directory = directory;
+		this.name = name;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether a new snapshot should be written before the given number
+	 * of records is appended, i.e. whether the journal would become larger
+	 * than the snapshot or might be damaged.
+	 *
+	 * @param newRecords
+	 *            The number of records that are about to be appended
+	 * @param valueCount
+	 *            The number of values in the complete map
+	 * @return {@code true} if a new snapshot should be written, {@code false}
+	 *         otherwise
+	 */
+	public synchronized boolean needsSnapshot(int newRecords, int valueCount) {
+		return damaged || ((size + pendingChanges.size() + newRecords) > Math.max(MINIMUM_JOURNAL_SIZE, valueCount));
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the map from the snapshot and the journal. If an invalid record is
+	 * found, the values that could be recovered are written as a new snapshot.
+	 *
+	 * @return The stored values, or {@code null} if nothing has been stored
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized Map<String, String> load() throws IOException {
+		File snapshotFile = getSnapshotFile();
+		if (!snapshotFile.exists()) {
+			/* a crash while replacing the snapshot can leave only the old one. */
+			snapshotFile = getOldSnapshotFile();
+		}
+		if (!snapshotFile.exists() && !getJournalFile().exists()) {
+			return null;
+		}
+		Map<String, String> values = new HashMap<String, String>();
+		generation = getLastGeneration(snapshotFile);
+		boolean snapshotComplete = readRecords(snapshotFile, values, generation);
+		size = countRecords(getJournalFile());
+		journalGeneration = getJournalFile().exists() ? getLastGeneration(getJournalFile()) : -1;
+		boolean journalComplete = readRecords(getJournalFile(), values, generation);
+		if (!snapshotComplete || !journalComplete) {
+			logger.log(Level.WARNING, "Journal %s is damaged, recovered %d values.", new Object[] { name, values.size() });
+			writeSnapshot(values);
+		}
+		return values;
+	}
+
+	/**
+	 * Stores the given value under the given key with the next
+	 * {@link #flush()}.
+	 *
+	 * @param key
+	 *            The key of the value
+	 * @param value
+	 *            The value
+	 */
+	public synchronized void put(String key, String value) {
+		pendingChanges.put(key, value);
+	}
+
+	/**
+	 * Removes the value with the given key with the next {@link #flush()}.
+	 *
+	 * @param key
+	 *            The key of the value to remove
+	 */
+	public synchronized void remove(String key) {
+		pendingChanges.put(key, null);
+	}
+
+	/**
+	 * Appends all pending changes to the journal file.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized void flush() throws IOException {
+		if (pendingChanges.isEmpty()) {
+			return;
+		}
+		StringBuilder records = new StringBuilder();
+		if (journalGeneration != generation) {
+			appendRecord(records, 'G', String.valueOf(generation), "");
+		}
+		for (Entry<String, String> change : pendingChanges.entrySet()) {
+			if (change.getValue() == null) {
+				appendRecord(records, 'R', change.getKey(), "");
+			} else {
+				appendRecord(records, 'P', change.getKey(), change.getValue());
+			}
+		}
+		try {
+			writeFile(getJournalFile(), records.toString(), true);
+		} catch (IOException ioe1) {
+			/* the last record might be incomplete, do not append to it. */
+			damaged = true;
+			throw ioe1;
+		}
+		size += pendingChanges.size() + ((journalGeneration != generation) ? 1 : 0);
+		journalGeneration = generation;
+		pendingChanges.clear();
+	}
+
+	/**
+	 * Writes a new snapshot containing the given values and removes the
+	 * journal. The snapshot is written to a temporary file first which then
+	 * replaces the old snapshot; the old snapshot is only removed once the new
+	 * one is in place. The new snapshot gets a new generation so that the old
+	 * journal is ignored even if it can not be removed. Pending changes are
+	 * kept and will be appended to the new journal with the next
+	 * {@link #flush()}.
+	 *
+	 * @param values
+	 *            The values to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized void writeSnapshot(Map<String, String> values) throws IOException {
+		long newGeneration = Math.max(generation, journalGeneration) + 1;
+		StringBuilder records = new StringBuilder();
+		appendRecord(records, 'G', String.valueOf(newGeneration), "");
+		for (Entry<String, String> value : values.entrySet()) {
+			appendRecord(records, 'P', value.getKey(), value.getValue());
+		}
+		File snapshotFile = getSnapshotFile();
+		File temporaryFile = new File(directory, name + ".snapshot.new");
+		writeFile(temporaryFile, records.toString(), false);
+		if (!temporaryFile.renameTo(snapshotFile)) {
+			/* some platforms can not rename onto an existing file. */
+			File oldSnapshotFile = getOldSnapshotFile();
+			oldSnapshotFile.delete();
+			if (snapshotFile.exists() && !snapshotFile.renameTo(oldSnapshotFile)) {
+				throw new IOException("Could not move snapshot " + snapshotFile + " out of the way!");
+			}
+			if (!temporaryFile.renameTo(snapshotFile)) {
+				oldSnapshotFile.renameTo(snapshotFile);
+				throw new IOException("Could not replace snapshot " + snapshotFile + "!");
+			}
+		}
+		getOldSnapshotFile().delete();
+		generation = newGeneration;
+		size = 0;
+		damaged = false;
+		/* a journal that can not be removed is ignored because of its generation. */
+		if (!getJournalFile().delete() && getJournalFile().exists()) {
+			size = countRecords(getJournalFile());
+		}
+	}
+
+	/**
+	 * Removes the snapshot, the journal, and all pending changes.
+	 */
+	public synchronized void delete() {
+		pendingChanges.clear();
+		getJournalFile().delete();
+		getSnapshotFile().delete();
+		getOldSnapshotFile().delete();
+		size = 0;
+		damaged = false;
+		generation = 0;
+		journalGeneration = -1;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the snapshot file.
+	 *
+	 * @return The snapshot file
+	 */
+	private File getSnapshotFile() {
+		return new File(directory, name + ".snapshot");
+	}
+
+	/**
+	 * Returns the file the old snapshot is moved to while it is replaced.
+	 *
+	 * @return The old snapshot file
+	 */
+	private File getOldSnapshotFile() {
+		return new File(directory, name + ".snapshot.old");
+	}
+
+	/**
+	 * Returns the journal file.
+	 *
+	 * @return The journal file
+	 */
+	private File getJournalFile() {
+		return new File(directory, name + ".journal");
+	}
+
+	/**
+	 * Writes the given records to the given file and waits until they have
+	 * reached the disk.
+	 *
+	 * @param file
+	 *            The file to write to
+	 * @param records
+	 *            The records to write
+	 * @param append
+	 *            {@code true} to append to the file, {@code false} to replace
+	 *            it
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeFile(File file, String records, boolean append) throws IOException {
+		if (!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create directory " + directory + "!");
+		}
+		FileOutputStream fileOutputStream = null;
+		try {
+			fileOutputStream = new FileOutputStream(file, append);
+			fileOutputStream.write(records.getBytes(utf8Charset));
+			fileOutputStream.getFD().sync();
+		} finally {
+			Closer.close(fileOutputStream);
+		}
+	}
+
+	/**
+	 * Reads all records of the given generation from the given file and
+	 * applies them to the given values. Records before the first generation
+	 * record belong to generation {@code 0}.
+	 *
+	 * @param file
+	 *            The file to read
+	 * @param values
+	 *            The values to apply the records to
+	 * @param generation
+	 *            The generation of the records to apply
+	 * @return {@code true} if all records of the file were valid,
+	 *         {@code false} if an invalid record was found
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private boolean readRecords(File file, Map<String, String> values, long generation) throws IOException {
+		BufferedReader reader = openFile(file);
+		if (reader == null) {
+			return true;
+		}
+		try {
+			long recordGeneration = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] record = parseRecord(line);
+				if (record == null) {
+					logger.log(Level.WARNING, "Invalid record in %s, ignoring rest of file.", file);
+					return false;
+				}
+				if (record[0].equals("G")) {
+					recordGeneration = Long.parseLong(record[1]);
+				} else if (recordGeneration != generation) {
+					continue;
+				} else if (record[0].equals("P")) {
+					values.put(record[1], record[2]);
+				} else {
+					values.remove(record[1]);
+				}
+			}
+			return true;
+		} finally {
+			Closer.close(reader);
+		}
+	}
+
+	/**
+	 * Returns the generation of the last valid generation record in the given
+	 * file.
+	 *
+	 * @param file
+	 *            The file to read
+	 * @return The last generation of the file, or {@code 0} if the file does
+	 *         not contain a generation record
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private long getLastGeneration(File file) throws IOException {
+		BufferedReader reader = openFile(file);
+		if (reader == null) {
+			return 0;
+		}
+		try {
+			long lastGeneration = 0;
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] record = parseRecord(line);
+				if (record == null) {
+					break;
+				}
+				if (record[0].equals("G")) {
+					lastGeneration = Long.parseLong(record[1]);
+				}
+			}
+			return lastGeneration;
+		} finally {
+			Closer.close(reader);
+		}
+	}
+
+	/**
+	 * Counts the lines of the given file.
+	 *
+	 * @param file
+	 *            The file
+	 * @return The number of lines in the file, or {@code 0} if the file does
+	 *         not exist
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private int countRecords(File file) throws IOException {
+		BufferedReader reader = openFile(file);
+		if (reader == null) {
+			return 0;
+		}
+		try {
+			int records = 0;
+			while (reader.readLine() != null) {
+				++records;
+			}
+			return records;
+		} finally {
+			Closer.close(reader);
+		}
+	}
+
+	/**
+	 * Opens the given file for reading.
+	 *
+	 * @param file
+	 *            The file to open
+	 * @return A reader for the file, or {@code null} if the file does not
+	 *         exist
+	 */
+	private BufferedReader openFile(File file) {
+		try {
+			return new BufferedReader(new InputStreamReader(new FileInputStream(file), utf8Charset));
+		} catch (FileNotFoundException fnfe1) {
+			return null;
+		}
+	}
+
+	/**
+	 * Appends a record to the given string builder. A record consists of the
+	 * checksum, the operation (“P” to put a value, “R” to remove it, “G” to
+	 * start a generation), the key (the generation for “G”), and the value,
+	 * separated by tabs.
+	 *
+	 * @param records
+	 *            The string builder to append the record to
+	 * @param operation
+	 *            The operation of the record
+	 * @param key
+	 *            The key of the value
+	 * @param value
+	 *            The value
+	 */
+	private static void appendRecord(StringBuilder records, char operation, String key, String value) {
+		String record = operation + "\t" + escape(key) + "\t" + escape(value);
+		records.append(checksum(record)).append('\t').append(record).append('\n');
+	}
+
+	/**
+	 * Parses the given record.
+	 *
+	 * @param line
+	 *            The line containing the record
+	 * @return The operation, the key, and the value of the record, or
+	 *         {@code null} if the record is invalid
+	 */
+	private static String[] parseRecord(String line) {
+		int checksumEnd = line.indexOf('\t');
+		if (checksumEnd == -1) {
+			return null;
+		}
+		String record = line.substring(checksumEnd + 1);
+		if (!line.substring(0, checksumEnd).equals(checksum(record))) {
+			return null;
+		}
+		String[] fields = record.split("\t", -1);
+		if ((fields.length != 3) || !(fields[0].equals("P") || fields[0].equals("R") || fields[0].equals("G"))) {
+			return null;
+		}
+		if (fields[0].equals("G") && (Numbers.safeParseLong(fields[1]) == null)) {
+			return null;
+		}
+		return new String[] { fields[0], unescape(fields[1]), unescape(fields[2]) };
+	}
+
+	/**
+	 * Calculates the checksum of the given record.
+	 *
+	 * @param record
+	 *            The record
+	 * @return The checksum of the record, as hexadecimal number
+	 */
+	private static String checksum(String record) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(record.getBytes(utf8Charset));
+		return Long.toHexString(crc32.getValue());
+	}
+
+	/**
+	 * Escapes backslashes, tabs, and line breaks in the given text.
+	 *
+	 * @param text
+	 *            The text to escape
+	 * @return The escaped text
+	 */
+	private static String escape(String text) {
+		StringBuilder escapedText = new StringBuilder(text.length());
+		for (char character : text.toCharArray()) {
+			if (character == '\\') {
+				escapedText.append("\\\\");
+			} else if (character == '\t') {
+				escapedText.append("\\t");
+			} else if (character == '\n') {
+				escapedText.append("\\n");
+			} else if (character == '\r') {
+				escapedText.append("\\r");
+			} else {
+				escapedText.append(character);
+			}
+		}
+		return escapedText.toString();
+	}
+
+	/**
+	 * Reverses {@link #escape(String)}.
+	 *
+	 * @param text
+	 *            The escaped text
+	 * @return The unescaped text
+	 */
+	private static String unescape(String text) {
+		StringBuilder unescapedText = new StringBuilder(text.length());
+		boolean escaped = false;
+		for (char character : text.toCharArray()) {
+			if (escaped) {
+				unescapedText.append((character == 't') ? '\t' : (character == 'n') ? '\n' : (character == 'r') ? '\r' : character);
+				escaped = false;
+			} else if (character == '\\') {
+				escaped = true;
+			} else {
+				unescapedText.append(character);
+			}
+		}
+		return unescapedText.toString();
+	}
+
+}
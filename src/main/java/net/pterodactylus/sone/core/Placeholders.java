@@ -0,0 +1,114 @@
+/*
+ * FreenetSone - Placeholders.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Size-bounded store for placeholder elements (posts or replies) that are
+ * referenced by their ID before their content is known. When the store is
+ * full the placeholder that has not been requested for the longest time is
+ * evicted. Placeholders are {@link #remove(String) removed} once the content
+ * of the element is known and it is stored elsewhere.
+ *
+ * @param <T>
+ *            The type of the elements
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public abstract class Placeholders<T> {
+
+	/** The placeholders, in order of their last access. */
+	/* synchronize access on this. */
+	private final Map<String, T> placeholders;
+
+	/**
+	 * Creates a new placeholder store.
+	 *
+	 * @param maximumSize
+	 *            The maximum number of placeholders to keep
+	 */
+	public Placeholders(final int maximumSize) {
+		placeholders = new LinkedHashMap<String, T>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, T> eldest) {
+				return size() > maximumSize;
+			}
+
+		};
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the placeholder with the given ID, creating it if necessary.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 * @return The placeholder for the element
+	 */
+	public synchronized T get(String id) {
+		T placeholder = placeholders.get(id);
+		if (placeholder == null) {
+			placeholder = createPlaceholder(id);
+			placeholders.put(id, placeholder);
+		}
+		return placeholder;
+	}
+
+	/**
+	 * Returns the number of placeholders.
+	 *
+	 * @return The number of placeholders
+	 */
+	public synchronized int size() {
+		return placeholders.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Removes the placeholder with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 */
+	public synchronized void remove(String id) {
+		placeholders.remove(id);
+	}
+
+	//
+	// ABSTRACT METHODS
+	//
+
+	/**
+	 * Creates a new placeholder for the element with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 * @return The new placeholder
+	 */
+	protected abstract T createPlaceholder(String id);
+
+}
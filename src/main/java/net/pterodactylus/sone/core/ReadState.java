@@ -0,0 +1,388 @@
+/*
+ * FreenetSone - ReadState.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Keeps track of which elements (posts or replies) are known. For every Sone
+ * a “read up to” time is stored; all elements of the Sone that are not newer
+ * than this time are known. Elements that are marked as known out of order
+ * are stored in a set of exceptions of their Sone until the time of the Sone
+ * can be {@link #compact(String, Collection) advanced} past them. Exceptions
+ * for elements that the Sone does not have anymore are removed as well.
+ *
+ * @param <T>
+ *            The type of the elements
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public abstract class ReadState<T> {
+
+	/** The “read up to” times, indexed by the ID of the Sone. */
+	private final Map<String, Long> readTimes = new HashMap<String, Long>();
+
+	/**
+	 * The IDs of known elements that are newer than their Sone’s time,
+	 * indexed by the ID of the Sone.
+	 */
+	private final Map<String, Set<String>> knownIds = new HashMap<String, Set<String>>();
+
+	/** The IDs of known elements whose Sone is not known yet. */
+	private final Set<String> unassignedIds = new CompactIdSet();
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the given element is known.
+	 *
+	 * @param element
+	 *            The element to check
+	 * @return {@code true} if the element is known, {@code false} otherwise
+	 */
+	public synchronized boolean isKnown(T element) {
+		Long readTime = readTimes.get(getSoneId(element));
+		if ((readTime != null) && (getTime(element) <= readTime)) {
+			return true;
+		}
+		Set<String> soneKnownIds = knownIds.get(getSoneId(element));
+		if ((soneKnownIds != null) && soneKnownIds.contains(getId(element))) {
+			return true;
+		}
+		return unassignedIds.contains(getId(element));
+	}
+
+	/**
+	 * Returns the “read up to” times of all Sones.
+	 *
+	 * @return The read times, indexed by Sone ID
+	 */
+	public synchronized Map<String, Long> getReadTimes() {
+		return new HashMap<String, Long>(readTimes);
+	}
+
+	/**
+	 * Returns the IDs of all elements that are known but newer than the
+	 * “read up to” time of their Sone, together with the IDs of their Sones.
+	 * IDs whose Sone is not known yet are mapped to {@code null}.
+	 *
+	 * @return The Sone IDs of known elements, indexed by the element IDs
+	 */
+	public synchronized Map<String, String> getKnownIds() {
+		Map<String, String> ids = new HashMap<String, String>();
+		for (String id : unassignedIds) {
+			ids.put(id, null);
+		}
+		for (Entry<String, Set<String>> soneKnownIds : knownIds.entrySet()) {
+			for (String id : soneKnownIds.getValue()) {
+				ids.put(id, soneKnownIds.getKey());
+			}
+		}
+		return ids;
+	}
+
+	/**
+	 * Returns the number of stored read times and known IDs.
+	 *
+	 * @return The size of this read state
+	 */
+	public synchronized int size() {
+		int size = readTimes.size() + unassignedIds.size();
+		for (Set<String> soneKnownIds : knownIds.values()) {
+			size += soneKnownIds.size();
+		}
+		return size;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Marks the given element as known.
+	 *
+	 * @param element
+	 *            The element to mark as known
+	 */
+	public synchronized void markKnown(T element) {
+		String soneId = getSoneId(element);
+		if ((soneId == null) || isKnown(element)) {
+			return;
+		}
+		if (getKnownIds(soneId).add(getId(element))) {
+			knownIdAdded(soneId, getId(element));
+		}
+	}
+
+	/**
+	 * Marks the element with the given ID as known. This is used to restore
+	 * the read state when it is loaded.
+	 *
+	 * @param soneId
+	 *            The ID of the element’s Sone, or {@code null} if the Sone is
+	 *            not known
+	 * @param id
+	 *            The ID of the known element
+	 */
+	public synchronized void addKnownId(String soneId, String id) {
+		if (soneId == null) {
+			unassignedIds.add(id);
+		} else {
+			getKnownIds(soneId).add(id);
+		}
+	}
+
+	/**
+	 * Sets the “read up to” time of the given Sone. This is used to restore
+	 * the read state when it is loaded.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param readTime
+	 *            The time up to which all elements of the Sone are known
+	 */
+	public synchronized void setReadTime(String soneId, long readTime) {
+		readTimes.put(soneId, readTime);
+	}
+
+	/**
+	 * Advances the “read up to” time of the given Sone as far as possible,
+	 * i.e. to the time of the newest element before the oldest element that
+	 * is not known, and removes all elements that are now covered by the read
+	 * time from the exceptions. Exceptions of the Sone that do not belong to
+	 * any of the given elements are removed, too.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param elements
+	 *            All current elements of the Sone
+	 */
+	public synchronized void compact(String soneId, Collection<T> elements) {
+		Set<String> soneKnownIds = getKnownIds(soneId);
+		TreeMap<Long, List<String>> elementIds = new TreeMap<Long, List<String>>();
+		Set<String> allElementIds = new HashSet<String>();
+		List<String> assignedIds = new ArrayList<String>();
+		for (T element : elements) {
+			List<String> ids = elementIds.get(getTime(element));
+			if (ids == null) {
+				ids = new ArrayList<String>();
+				elementIds.put(getTime(element), ids);
+			}
+			ids.add(getId(element));
+			allElementIds.add(getId(element));
+			if (unassignedIds.contains(getId(element))) {
+				assignedIds.add(getId(element));
+			}
+		}
+		if (!assignedIds.isEmpty()) {
+			unassignedIds.removeAll(assignedIds);
+			soneKnownIds.addAll(assignedIds);
+			for (String id : assignedIds) {
+				knownIdAdded(soneId, id);
+			}
+		}
+		Long oldReadTime = readTimes.get(soneId);
+		long readTime = (oldReadTime != null) ? oldReadTime : Long.MIN_VALUE;
+		List<String> removedIds = new ArrayList<String>();
+		for (Entry<Long, List<String>> timeIds : elementIds.entrySet()) {
+			if (timeIds.getKey() > readTime) {
+				if (!soneKnownIds.containsAll(timeIds.getValue())) {
+					break;
+				}
+				readTime = timeIds.getKey();
+			}
+			for (String id : timeIds.getValue()) {
+				if (soneKnownIds.contains(id)) {
+					removedIds.add(id);
+				}
+			}
+		}
+		for (String id : soneKnownIds) {
+			if (!allElementIds.contains(id)) {
+				removedIds.add(id);
+			}
+		}
+		if ((readTime != Long.MIN_VALUE) && ((oldReadTime == null) || (readTime != oldReadTime))) {
+			readTimes.put(soneId, readTime);
+			readTimeChanged(soneId, readTime);
+		}
+		if (!removedIds.isEmpty()) {
+			soneKnownIds.removeAll(removedIds);
+			knownIdsRemoved(removedIds);
+		}
+		if (soneKnownIds.isEmpty()) {
+			knownIds.remove(soneId);
+		}
+	}
+
+	/**
+	 * Removes the given element from the exceptions, e.g. because it has
+	 * been deleted.
+	 *
+	 * @param element
+	 *            The element to remove
+	 */
+	public synchronized void remove(T element) {
+		String id = getId(element);
+		Set<String> soneKnownIds = knownIds.get(getSoneId(element));
+		boolean removed = (soneKnownIds != null) && soneKnownIds.remove(id);
+		removed |= unassignedIds.remove(id);
+		if ((soneKnownIds != null) && soneKnownIds.isEmpty()) {
+			knownIds.remove(getSoneId(element));
+		}
+		if (removed) {
+			knownIdsRemoved(Collections.singletonList(id));
+		}
+	}
+
+	/**
+	 * Removes the read time and all exceptions of the given Sone, e.g. because
+	 * the Sone has been deleted.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 */
+	public synchronized void removeSone(String soneId) {
+		if (readTimes.remove(soneId) != null) {
+			readTimeRemoved(soneId);
+		}
+		Set<String> soneKnownIds = knownIds.remove(soneId);
+		if (soneKnownIds != null) {
+			knownIdsRemoved(new ArrayList<String>(soneKnownIds));
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the exceptions of the given Sone, creating them if necessary.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return The IDs of the known elements of the Sone
+	 */
+	private Set<String> getKnownIds(String soneId) {
+		Set<String> soneKnownIds = knownIds.get(soneId);
+		if (soneKnownIds == null) {
+			soneKnownIds = new CompactIdSet();
+			knownIds.put(soneId, soneKnownIds);
+		}
+		return soneKnownIds;
+	}
+
+	//
+	// ABSTRACT METHODS
+	//
+
+	/**
+	 * Returns the ID of the given element.
+	 *
+	 * @param element
+	 *            The element
+	 * @return The ID of the element
+	 */
+	protected abstract String getId(T element);
+
+	/**
+	 * Returns the ID of the Sone the given element belongs to.
+	 *
+	 * @param element
+	 *            The element
+	 * @return The ID of the element’s Sone
+	 */
+	protected abstract String getSoneId(T element);
+
+	/**
+	 * Returns the time of the given element.
+	 *
+	 * @param element
+	 *            The element
+	 * @return The time of the element
+	 */
+	protected abstract long getTime(T element);
+
+	//
+	// SUBCLASS METHODS
+	//
+
+	/**
+	 * Called when an element has been marked as known out of order, or when
+	 * the Sone of a known element has been found. This method is not called
+	 * for IDs added by {@link #addKnownId(String, String)}. The default
+	 * implementation does nothing.
+	 *
+	 * @param soneId
+	 *            The ID of the element’s Sone
+	 * @param id
+	 *            The ID of the known element
+	 */
+	protected void knownIdAdded(String soneId, String id) {
+		/* do nothing. */
+	}
+
+	/**
+	 * Called when known elements have been removed from the exceptions
+	 * because they are covered by the read time of their Sone or because they
+	 * do not exist anymore. The default implementation does nothing.
+	 *
+	 * @param ids
+	 *            The IDs of the removed elements
+	 */
+	protected void knownIdsRemoved(Collection<String> ids) {
+		/* do nothing. */
+	}
+
+	/**
+	 * Called when the read time of a Sone has been advanced by
+	 * {@link #compact(String, Collection)}. This method is not called for
+	 * read times set by {@link #setReadTime(String, long)}. The default
+	 * implementation does nothing.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param readTime
+	 *            The new read time of the Sone
+	 */
+	protected void readTimeChanged(String soneId, long readTime) {
+		/* do nothing. */
+	}
+
+	/**
+	 * Called when the read time of a Sone has been removed by
+	 * {@link #removeSone(String)}. The default implementation does nothing.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 */
+	protected void readTimeRemoved(String soneId) {
+		/* do nothing. */
+	}
+
+}
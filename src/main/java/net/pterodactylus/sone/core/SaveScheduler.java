@@ -0,0 +1,176 @@
+/*
+ * FreenetSone - SaveScheduler.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.logging.Logging;
+import net.pterodactylus.util.service.AbstractService;
+
+/**
+ * Collects requests to save Sones and the configuration and performs them in
+ * the background. All requests that arrive during one save interval are
+ * coalesced so that a Sone or the configuration is written at most once per
+ * interval, no matter how often it has been changed.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SaveScheduler extends AbstractService {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SaveScheduler.class);
+
+	/** The save interval (in milliseconds). */
+	private static final long SAVE_INTERVAL = 5000;
+
+	/** The core. */
+	private final Core core;
+
+	/** The Sones that need to be saved. */
+	/* synchronize access on this. */
+	private final Set<Sone> dirtySones = new LinkedHashSet<Sone>();
+
+	/** Whether the configuration needs to be saved. */
+	/* synchronize access on this. */
+	private boolean configurationDirty;
+
+	/** Lock that serializes the actual saves. */
+	private final Object saveLock = new Object();
+
+	/**
+	 * Creates a new save scheduler.
+	 *
+	 * @param core
+	 *            The core
+	 */
+	public SaveScheduler(Core core) {
+		super("Sone Save Scheduler", false);
+		this.core = core;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Schedules the given Sone to be saved.
+	 *
+	 * @param sone
+	 *            The Sone to save
+	 */
+	public synchronized void scheduleSone(Sone sone) {
+		dirtySones.add(sone);
+	}
+
+	/**
+	 * Schedules the configuration to be saved.
+	 */
+	public synchronized void scheduleConfiguration() {
+		configurationDirty = true;
+	}
+
+	/**
+	 * Saves all scheduled Sones and, if necessary, the configuration on the
+	 * calling thread. Sones and the configuration that could not be saved
+	 * are scheduled again and will be saved with the next flush.
+	 */
+	public void flush() {
+		synchronized (saveLock) {
+			List<Sone> sones;
+			boolean saveConfiguration;
+			synchronized (this) {
+				sones = new ArrayList<Sone>(dirtySones);
+				dirtySones.clear();
+				saveConfiguration = configurationDirty;
+				configurationDirty = false;
+			}
+			int failedSones = 0;
+			for (Sone sone : sones) {
+				if (!storeSone(sone)) {
+					scheduleSone(sone);
+					++failedSones;
+				}
+			}
+			boolean configurationFailed = saveConfiguration && !storeConfiguration();
+			if (configurationFailed) {
+				scheduleConfiguration();
+			}
+			if (!sones.isEmpty() || saveConfiguration) {
+				logger.log(Level.FINE, "Saved %d Sones and %s configuration, %d Sones and %s configuration failed.", new Object[] { sones.size() - failedSones, (saveConfiguration && !configurationFailed) ? "the" : "no", failedSones, configurationFailed ? "the" : "no" });
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Stores the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to store
+	 * @return {@code true} if the Sone was stored, {@code false} if storing
+	 *         it failed
+	 */
+	private boolean storeSone(Sone sone) {
+		try {
+			return core.storeSone(sone);
+		} catch (RuntimeException re1) {
+			logger.log(Level.SEVERE, "Could not save Sone " + sone + "!", re1);
+			return false;
+		}
+	}
+
+	/**
+	 * Stores the configuration.
+	 *
+	 * @return {@code true} if the configuration was stored, {@code false} if
+	 *         storing it failed
+	 */
+	private boolean storeConfiguration() {
+		try {
+			return core.storeConfiguration();
+		} catch (RuntimeException re1) {
+			logger.log(Level.SEVERE, "Could not save configuration!", re1);
+			return false;
+		}
+	}
+
+	//
+	// SERVICE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void serviceRun() {
+		while (!shouldStop()) {
+			sleep(SAVE_INTERVAL);
+			flush();
+		}
+	}
+
+}
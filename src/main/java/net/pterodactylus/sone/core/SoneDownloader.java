@@ -19,28 +19,37 @@ package net.pterodactylus.sone.core;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.sone.core.Core.SoneStatus;
-import net.pterodactylus.sone.data.Client;
-import net.pterodactylus.sone.data.Post;
-import net.pterodactylus.sone.data.Profile;
-import net.pterodactylus.sone.data.Reply;
+import net.pterodactylus.sone.core.FreenetInterface.FetchCallback;
+import net.pterodactylus.sone.core.FreenetInterface.PollingTier;
+import net.pterodactylus.sone.core.SoneException.Type;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.util.collection.Pair;
 import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.logging.Logging;
-import net.pterodactylus.util.number.Numbers;
 import net.pterodactylus.util.service.AbstractService;
-import net.pterodactylus.util.xml.SimpleXML;
-import net.pterodactylus.util.xml.XML;
-
-import org.w3c.dom.Document;
 
+import freenet.client.FetchException;
 import freenet.client.FetchResult;
 import freenet.keys.FreenetURI;
 import freenet.support.api.Bucket;
@@ -55,8 +64,44 @@ public class SoneDownloader extends AbstractService {
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(SoneDownloader.class);
 
-	/** The maximum protocol version. */
-	private static final int MAX_PROTOCOL_VERSION = 0;
+	/**
+	 * The default number of fetches that run at the same time, which is also
+	 * the number of threads that start fetches and parse Sones.
+	 */
+	public static final int DEFAULT_FETCH_THREADS = 5;
+
+	/** The default maximum size of a Sone (in bytes). */
+	public static final long DEFAULT_MAXIMUM_SONE_SIZE = 2 * 1024 * 1024;
+
+	/**
+	 * The interval in which Sones whose backoff has ended are fetched again
+	 * (in milliseconds).
+	 */
+	private static final long RETRY_INTERVAL = SoneHealth.MINIMUM_BACKOFF;
+
+	/** The interval in which the polling tiers are updated (in milliseconds). */
+	private static final long POLLING_TIER_INTERVAL = 10 * 60 * 1000;
+
+	/** The time without updates after which a Sone is dormant (in milliseconds). */
+	private static final long DORMANT_TIME = 7 * 24 * 60 * 60 * 1000L;
+
+	/** The interval in which dormant Sones are promoted (in milliseconds). */
+	private static final long PROMOTION_INTERVAL = 24 * 60 * 60 * 1000L;
+
+	/** How long a dormant Sone stays promoted (in milliseconds). */
+	private static final long PROMOTION_TIME = 60 * 60 * 1000;
+
+	/** The priority of parsing downloaded Sones. */
+	private static final int PRIORITY_PARSE = -1;
+
+	/** The priority of fetches of local Sones. */
+	private static final int PRIORITY_LOCAL = 0;
+
+	/** The priority of fetches of Sones that are followed by a local Sone. */
+	private static final int PRIORITY_FRIEND = 1;
+
+	/** The priority of fetches of all other Sones. */
+	private static final int PRIORITY_OTHER = 2;
 
 	/** The core. */
 	private final Core core;
@@ -64,9 +109,51 @@ public class SoneDownloader extends AbstractService {
 	/** The Freenet interface. */
 	private final FreenetInterface freenetInterface;
 
+	/** The parser for downloaded Sones. */
+	private final SoneParser soneParser;
+
 	/** The sones to update. */
+	/* synchronize access on this. */
 	private final Set<Sone> sones = new HashSet<Sone>();
 
+	/** The fetch states, indexed by their Sone. */
+	/* synchronize access on fetchStates. */
+	private final Map<Sone, FetchState> fetchStates = new HashMap<Sone, FetchState>();
+
+	/** The maximum size of a Sone (in bytes). */
+	private volatile long maximumSoneSize = DEFAULT_MAXIMUM_SONE_SIZE;
+
+	/** The number of Sones that were not fetched because of their size. */
+	private final AtomicInteger oversizedSones = new AtomicInteger();
+
+	/** The fetches that wait for a free slot, in order of their priority. */
+	/* synchronize access on fetchStates. */
+	private final Queue<Fetch> pendingFetches = new PriorityQueue<Fetch>();
+
+	/** The maximum number of fetches that run at the same time. */
+	/* synchronize access on fetchStates. */
+	private int fetchSlots = DEFAULT_FETCH_THREADS;
+
+	/** The number of fetches that are running. */
+	/* synchronize access on fetchStates. */
+	private int runningFetches;
+
+	/** The counter for the order of fetches with the same priority. */
+	private final AtomicLong fetchCounter = new AtomicLong();
+
+	/**
+	 * The executor that starts the fetches, in order of their priority, and
+	 * parses the downloaded Sones.
+	 */
+	private final ThreadPoolExecutor fetchExecutor = new ThreadPoolExecutor(DEFAULT_FETCH_THREADS, DEFAULT_FETCH_THREADS, 60, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			return new Thread(runnable, "Sone Downloader");
+		}
+
+	});
+
 	/**
 	 * Creates a new Sone downloader.
 	 *
@@ -79,6 +166,82 @@ public class SoneDownloader extends AbstractService {
 		super("Sone Downloader", false);
 		this.core = core;
 		this.freenetInterface = freenetInterface;
+		this.soneParser = new SoneParser();
+		fetchExecutor.allowCoreThreadTimeOut(true);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the maximum size of a Sone. Larger Sones are not fetched.
+	 *
+	 * @param maximumSoneSize
+	 *            The maximum size of a Sone (in bytes)
+	 */
+	public void setMaximumSoneSize(long maximumSoneSize) {
+		this.maximumSoneSize = maximumSoneSize;
+	}
+
+	/**
+	 * Returns the number of Sones that were not fetched because they were
+	 * larger than the maximum size.
+	 *
+	 * @return The number of oversized Sones
+	 */
+	public int getOversizedSoneCount() {
+		return oversizedSones.get();
+	}
+
+	/**
+	 * Returns the number of Sones that were rejected while parsing because
+	 * they exceeded the limits of the {@link SoneParser}.
+	 *
+	 * @return The number of Sones that exceeded the parser limits
+	 */
+	public int getLimitExceededSoneCount() {
+		return soneParser.getLimitExceededCount();
+	}
+
+	/**
+	 * Returns the health record of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone
+	 * @return The health record of the Sone, or {@code null} if no fetch of
+	 *         the Sone has been scheduled yet
+	 */
+	public SoneHealth getSoneHealth(Sone sone) {
+		synchronized (fetchStates) {
+			FetchState fetchState = fetchStates.get(sone);
+			return (fetchState != null) ? fetchState.health : null;
+		}
+	}
+
+	/**
+	 * Sets the number of fetches that run at the same time, and the number of
+	 * threads that start fetches and parse the downloaded Sones. The fetches
+	 * themselves do not occupy a thread while they are running.
+	 *
+	 * @param fetchThreads
+	 *            The number of fetches and threads
+	 */
+	public void setFetchThreads(int fetchThreads) {
+		int threads = Math.max(1, fetchThreads);
+		synchronized (fetchStates) {
+			fetchSlots = threads;
+			startFetches();
+		}
+		synchronized (fetchExecutor) {
+			if (threads > fetchExecutor.getMaximumPoolSize()) {
+				fetchExecutor.setMaximumPoolSize(threads);
+				fetchExecutor.setCorePoolSize(threads);
+			} else {
+				fetchExecutor.setCorePoolSize(threads);
+				fetchExecutor.setMaximumPoolSize(threads);
+			}
+		}
 	}
 
 	//
@@ -92,9 +255,12 @@ public class SoneDownloader extends AbstractService {
 	 *            The Sone to add
 	 */
 	public void addSone(Sone sone) {
-		if (sones.add(sone)) {
-			freenetInterface.registerUsk(sone, this);
+		synchronized (sones) {
+			if (!sones.add(sone)) {
+				return;
+			}
 		}
+		freenetInterface.registerUsk(sone, getPollingTier(sone, System.currentTimeMillis()), this);
 	}
 
 	/**
@@ -104,53 +270,95 @@ public class SoneDownloader extends AbstractService {
 	 *            The Sone to stop watching
 	 */
 	public void removeSone(Sone sone) {
-		if (sones.remove(sone)) {
-			freenetInterface.unregisterUsk(sone);
+		synchronized (sones) {
+			if (!sones.remove(sone)) {
+				return;
+			}
+		}
+		synchronized (fetchStates) {
+			fetchStates.remove(sone);
+		}
+		freenetInterface.unregisterUsk(sone);
+	}
+
+	/**
+	 * Records that the given edition of the given Sone is already known, e.g.
+	 * because it has been loaded from a cache. Fetches of this edition or
+	 * older editions will not be scheduled.
+	 *
+	 * @param sone
+	 *            The Sone
+	 * @param edition
+	 *            The known edition of the Sone
+	 */
+	public void setFetchedEdition(Sone sone, long edition) {
+		synchronized (fetchStates) {
+			FetchState fetchState = getFetchState(sone);
+			fetchState.fetchedEdition = Math.max(fetchState.fetchedEdition, edition);
 		}
 	}
 
 	/**
-	 * Fetches the updated Sone. This method is a callback method for
+	 * Schedules a fetch of the {@link Sone#getLatestEdition() latest edition}
+	 * of the given Sone. Fetches are asynchronous, but only a limited number
+	 * of them runs at the same time; local Sones are fetched first, then Sones
+	 * that are followed by a local Sone, then all other Sones. Nothing is
+	 * scheduled if the edition has already been fetched. If fetches of the
+	 * Sone have failed recently the fetch is delayed until its
+	 * {@link SoneHealth backoff} has ended. If a fetch of the Sone is waiting
+	 * or running, only the requested edition is recorded; a running fetch
+	 * schedules exactly one follow-up fetch when a newer edition has been
+	 * requested meanwhile. This method is a callback method for
 	 * {@link FreenetInterface#registerUsk(Sone, SoneDownloader)}.
 	 *
 	 * @param sone
 	 *            The Sone to fetch
 	 */
-	public void fetchSone(Sone sone) {
-		fetchSone(sone, sone.getRequestUri());
+	public void scheduleFetch(Sone sone) {
+		long edition = sone.getLatestEdition();
+		synchronized (fetchStates) {
+			FetchState fetchState = getFetchState(sone);
+			if (edition <= fetchState.fetchedEdition) {
+				logger.log(Level.FINEST, "Edition %d of Sone %s has already been fetched.", new Object[] { edition, sone });
+				return;
+			}
+			fetchState.requestedEdition = Math.max(fetchState.requestedEdition, edition);
+			if (fetchState.queued || fetchState.fetching) {
+				logger.log(Level.FINEST, "Fetch of Sone %s is already pending, requested edition is %d.", new Object[] { sone, fetchState.requestedEdition });
+				return;
+			}
+			queueFetch(sone, fetchState);
+		}
 	}
 
 	/**
-	 * Fetches the updated Sone. This method can be used to fetch a Sone from a
-	 * specific URI (which happens when {@link Core#isSoneRescueMode() „Sone
-	 * rescue mode“} is active).
+	 * Fetches and parses the Sone from the given URI without updating the
+	 * stored Sone or its status. Failures are recorded in the
+	 * {@link #getSoneHealth(Sone) health record} of the Sone.
 	 *
 	 * @param sone
 	 *            The Sone to fetch
 	 * @param soneUri
 	 *            The URI to fetch the Sone from
+	 * @return The parsed Sone, or {@code null} if the Sone could not be
+	 *         fetched or parsed
 	 */
-	public void fetchSone(Sone sone, FreenetURI soneUri) {
-		if (core.getSoneStatus(sone) == SoneStatus.downloading) {
-			return;
-		}
+	public Sone fetchSoneData(Sone sone, FreenetURI soneUri) {
 		logger.log(Level.FINE, "Starting fetch for Sone “%s” from %s…", new Object[] { sone, soneUri });
 		FreenetURI requestUri = soneUri.setMetaString(new String[] { "sone.xml" });
-		core.setSoneStatus(sone, SoneStatus.downloading);
+		Pair<FreenetURI, FetchResult> fetchResults;
 		try {
-			Pair<FreenetURI, FetchResult> fetchResults = freenetInterface.fetchUri(requestUri);
-			if (fetchResults == null) {
-				/* TODO - mark Sone as bad. */
-				return;
-			}
-			logger.log(Level.FINEST, "Got %d bytes back.", fetchResults.getRight().size());
-			Sone parsedSone = parseSone(sone, fetchResults.getRight(), fetchResults.getLeft());
-			if (parsedSone != null) {
-				core.updateSone(parsedSone);
-			}
-		} finally {
-			core.setSoneStatus(sone, (sone.getTime() == 0) ? SoneStatus.unknown : SoneStatus.idle);
+			fetchResults = freenetInterface.fetchUri(requestUri, maximumSoneSize);
+		} catch (FetchException fe1) {
+			oversizedSones.incrementAndGet();
+			recordFailure(sone, Type.SONE_TOO_LARGE, "Larger than " + maximumSoneSize + " bytes.");
+			return null;
+		}
+		if (fetchResults == null) {
+			recordFailure(sone, Type.FETCH_FAILED, "Could not fetch " + requestUri + ".");
+			return null;
 		}
+		return parseFetchResult(sone, fetchResults.getLeft(), fetchResults.getRight());
 	}
 
 	/**
@@ -162,282 +370,578 @@ public class SoneDownloader extends AbstractService {
 	 *            The fetch result
 	 * @param requestUri
 	 *            The requested URI
-	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
+	 * @return The parsed Sone
+	 * @throws SoneException
+	 *             if the Sone could not be parsed
 	 */
-	public Sone parseSone(Sone originalSone, FetchResult fetchResult, FreenetURI requestUri) {
+	public Sone parseSone(Sone originalSone, FetchResult fetchResult, FreenetURI requestUri) throws SoneException {
 		logger.log(Level.FINEST, "Parsing FetchResult (%d bytes, %s) for %s…", new Object[] { fetchResult.size(), fetchResult.getMimeType(), originalSone });
 		Bucket soneBucket = fetchResult.asBucket();
 		InputStream soneInputStream = null;
 		try {
 			soneInputStream = soneBucket.getInputStream();
 			Sone parsedSone = parseSone(originalSone, soneInputStream);
-			if (parsedSone != null) {
-				parsedSone.setLatestEdition(requestUri.getEdition());
-				if (requestUri.getKeyType().equals("USK")) {
-					parsedSone.setRequestUri(requestUri.setMetaString(new String[0]));
-				} else {
-					parsedSone.setRequestUri(requestUri.setKeyType("USK").setDocName("Sone").setMetaString(new String[0]));
-				}
+			parsedSone.setLatestEdition(requestUri.getEdition());
+			if (requestUri.getKeyType().equals("USK")) {
+				parsedSone.setRequestUri(requestUri.setMetaString(new String[0]));
+			} else {
+				parsedSone.setRequestUri(requestUri.setKeyType("USK").setDocName("Sone").setMetaString(new String[0]));
 			}
 			return parsedSone;
 		} catch (IOException ioe1) {
-			logger.log(Level.WARNING, "Could not parse Sone from " + requestUri + "!", ioe1);
+			throw new SoneException(Type.FETCH_FAILED, "Could not read Sone from " + requestUri + ".", ioe1);
 		} finally {
 			Closer.close(soneInputStream);
 			soneBucket.free();
 		}
-		return null;
 	}
 
 	/**
 	 * Parses a Sone from the given input stream and creates a new Sone from the
-	 * parsed data.
+	 * parsed data. Problems that do not prevent the Sone from being used are
+	 * recorded as warnings in the {@link #getSoneHealth(Sone) health record}
+	 * of the Sone.
 	 *
 	 * @param originalSone
 	 *            The Sone to update
 	 * @param soneInputStream
 	 *            The input stream to parse the Sone from
 	 * @return The parsed Sone
+	 * @throws SoneException
+	 *             if the Sone could not be parsed
 	 */
-	public Sone parseSone(Sone originalSone, InputStream soneInputStream) {
-		/* TODO - impose a size limit? */
-
-		Document document;
-		/* XML parsing is not thread-safe. */
-		synchronized (this) {
-			document = XML.transformToDocument(soneInputStream);
-		}
-		if (document == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Could not parse XML for Sone %s!", new Object[] { originalSone });
-			return null;
+	public Sone parseSone(Sone originalSone, InputStream soneInputStream) throws SoneException {
+		SoneHealth soneHealth;
+		synchronized (fetchStates) {
+			soneHealth = getFetchState(originalSone).health;
 		}
+		return soneParser.parseSone(originalSone, soneInputStream, soneHealth);
+	}
 
-		Sone sone = new Sone(originalSone.getId()).setIdentity(originalSone.getIdentity());
+	//
+	// SERVICE METHODS
+	//
 
-		SimpleXML soneXml;
-		try {
-			soneXml = SimpleXML.fromDocument(document);
-		} catch (NullPointerException npe1) {
-			/* for some reason, invalid XML can cause NPEs. */
-			logger.log(Level.WARNING, "XML for Sone " + sone + " can not be parsed!", npe1);
-			return null;
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void serviceRun() {
+		long lastPollingTierUpdate = System.currentTimeMillis();
+		while (!shouldStop()) {
+			sleep(RETRY_INTERVAL);
+			if (shouldStop()) {
+				break;
+			}
+			retryFetches();
+			if ((System.currentTimeMillis() - lastPollingTierUpdate) >= POLLING_TIER_INTERVAL) {
+				updatePollingTiers();
+				lastPollingTierUpdate = System.currentTimeMillis();
+			}
 		}
+	}
 
-		Integer protocolVersion = null;
-		String soneProtocolVersion = soneXml.getValue("protocol-version", null);
-		if (soneProtocolVersion != null) {
-			protocolVersion = Numbers.safeParseInteger(soneProtocolVersion);
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void serviceStop() {
+		List<Sone> sones;
+		synchronized (this.sones) {
+			sones = new ArrayList<Sone>(this.sones);
 		}
-		if (protocolVersion == null) {
-			logger.log(Level.INFO, "No protocol version found, assuming 0.");
-			protocolVersion = 0;
+		for (Sone sone : sones) {
+			freenetInterface.unregisterUsk(sone);
 		}
-
-		if (protocolVersion < 0) {
-			logger.log(Level.WARNING, "Invalid protocol version: " + protocolVersion + "! Not parsing Sone.");
-			return null;
+		synchronized (fetchStates) {
+			pendingFetches.clear();
 		}
+		fetchExecutor.shutdown();
+		fetchExecutor.getQueue().clear();
+	}
 
-		/* check for valid versions. */
-		if (protocolVersion > MAX_PROTOCOL_VERSION) {
-			logger.log(Level.WARNING, "Unknown protocol version: " + protocolVersion + "! Not parsing Sone.");
-			return null;
-		}
+	//
+	// PRIVATE METHODS
+	//
 
-		String soneTime = soneXml.getValue("time", null);
-		if (soneTime == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded time for Sone %s was null!", new Object[] { sone });
-			return null;
+	/**
+	 * Returns the fetch state of the given Sone, creating it if necessary.
+	 * The caller has to hold the lock on {@link #fetchStates}.
+	 *
+	 * @param sone
+	 *            The Sone
+	 * @return The fetch state of the Sone
+	 */
+	private FetchState getFetchState(Sone sone) {
+		FetchState fetchState = fetchStates.get(sone);
+		if (fetchState == null) {
+			fetchState = new FetchState();
+			fetchStates.put(sone, fetchState);
 		}
+		return fetchState;
+	}
+
+	/**
+	 * Parses the Sone from the given fetch result and records the outcome in
+	 * the health record of the Sone.
+	 *
+	 * @param sone
+	 *            The Sone that was fetched
+	 * @param uri
+	 *            The URI the Sone was fetched from
+	 * @param fetchResult
+	 *            The result of the fetch
+	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
+	 */
+	private Sone parseFetchResult(Sone sone, FreenetURI uri, FetchResult fetchResult) {
+		logger.log(Level.FINEST, "Got %d bytes back.", fetchResult.size());
 		try {
-			sone.setTime(Long.parseLong(soneTime));
-		} catch (NumberFormatException nfe1) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s with invalid time: %s", new Object[] { sone, soneTime });
+			Sone parsedSone = parseSone(sone, fetchResult, uri);
+			synchronized (fetchStates) {
+				getFetchState(sone).health.fetchSucceeded();
+			}
+			return parsedSone;
+		} catch (SoneException se1) {
+			recordFailure(sone, se1.getType(), se1.getMessage());
 			return null;
 		}
+	}
 
-		SimpleXML clientXml = soneXml.getNode("client");
-		if (clientXml != null) {
-			String clientName = clientXml.getValue("name", null);
-			String clientVersion = clientXml.getValue("version", null);
-			if ((clientName == null) || (clientVersion == null)) {
-				logger.log(Level.WARNING, "Download Sone %s with client XML but missing name or version!", sone);
-				return null;
+	/**
+	 * Finishes a fetch of the given Sone, and queues another fetch if a newer
+	 * edition has been requested while the fetch was running.
+	 *
+	 * @param sone
+	 *            The Sone that was fetched
+	 * @param fetchState
+	 *            The fetch state of the Sone
+	 * @param edition
+	 *            The edition that was requested when the fetch was started
+	 */
+	private void finishFetch(Sone sone, FetchState fetchState, long edition) {
+		core.setSoneStatus(sone, (sone.getTime() == 0) ? SoneStatus.unknown : SoneStatus.idle);
+		synchronized (fetchStates) {
+			fetchState.fetching = false;
+			/* only newer editions requested during the fetch need another one. */
+			if (fetchState.requestedEdition > Math.max(edition, fetchState.fetchedEdition)) {
+				queueFetch(sone, fetchState);
 			}
-			sone.setClient(new Client(clientName, clientVersion));
 		}
+	}
 
-		String soneRequestUri = soneXml.getValue("request-uri", null);
-		if (soneRequestUri != null) {
-			try {
-				sone.setRequestUri(new FreenetURI(soneRequestUri));
-			} catch (MalformedURLException mue1) {
-				/* TODO - mark Sone as bad. */
-				logger.log(Level.WARNING, "Downloaded Sone " + sone + " has invalid request URI: " + soneRequestUri, mue1);
-				return null;
-			}
+	/**
+	 * Records a failed fetch of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone that could not be fetched
+	 * @param type
+	 *            The type of the failure
+	 * @param reason
+	 *            The reason of the failure
+	 */
+	private void recordFailure(Sone sone, Type type, String reason) {
+		SoneHealth health;
+		synchronized (fetchStates) {
+			health = getFetchState(sone).health;
+		}
+		health.fetchFailed(type, reason);
+		logger.log(Level.WARNING, "Could not fetch Sone %s (%s): %s Failed %d times in a row.", new Object[] { sone, type, reason, health.getConsecutiveFailures() });
+	}
+
+	/**
+	 * Queues a fetch of the given Sone, unless the Sone is not a local Sone
+	 * and its backoff has not yet ended. The fetch waits until a fetch slot
+	 * is free. The caller has to hold the lock on {@link #fetchStates}.
+	 *
+	 * @param sone
+	 *            The Sone to fetch
+	 * @param fetchState
+	 *            The fetch state of the Sone
+	 */
+	private void queueFetch(Sone sone, FetchState fetchState) {
+		if (fetchState.health.isBackingOff() && !core.isLocalSone(sone)) {
+			logger.log(Level.FINE, "Not fetching Sone %s, backing off for another %d seconds.", new Object[] { sone, (fetchState.health.getBackoffUntil() - System.currentTimeMillis()) / 1000 });
+			return;
+		}
+		if (fetchExecutor.isShutdown()) {
+			logger.log(Level.FINE, "Not fetching Sone %s, downloader is stopped.", sone);
+			return;
 		}
+		pendingFetches.add(new Fetch(sone, getPriority(sone), fetchCounter.getAndIncrement()));
+		fetchState.queued = true;
+		startFetches();
+	}
 
-		String soneInsertUri = soneXml.getValue("insert-uri", null);
-		if ((soneInsertUri != null) && (sone.getInsertUri() == null)) {
+	/**
+	 * Hands waiting fetches to the executor, in order of their priority, as
+	 * long as fetch slots are free. The slot of a fetch is taken here, before
+	 * it is handed to the executor, so that no thread of the executor ever
+	 * waits for a slot. The caller has to hold the lock on
+	 * {@link #fetchStates}.
+	 */
+	@SuppressWarnings("synthetic-access")
+	private void startFetches() {
+		while ((runningFetches < fetchSlots) && !pendingFetches.isEmpty()) {
+			Fetch fetch = pendingFetches.poll();
+			++runningFetches;
 			try {
-				sone.setInsertUri(new FreenetURI(soneInsertUri));
-				sone.setLatestEdition(Math.max(sone.getRequestUri().getSuggestedEdition(), sone.getInsertUri().getSuggestedEdition()));
-			} catch (MalformedURLException mue1) {
-				/* TODO - mark Sone as bad. */
-				logger.log(Level.WARNING, "Downloaded Sone " + sone + " has invalid insert URI: " + soneInsertUri, mue1);
-				return null;
+				fetchExecutor.execute(fetch);
+			} catch (RejectedExecutionException ree1) {
+				logger.log(Level.FINE, "Not fetching Sone %s, downloader is stopped.", fetch.sone);
+				--runningFetches;
+				getFetchState(fetch.sone).queued = false;
 			}
 		}
+	}
 
-		SimpleXML profileXml = soneXml.getNode("profile");
-		if (profileXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s has no profile!", new Object[] { sone });
-			return null;
+	/**
+	 * Frees the slot of a fetch that has finished, and starts the next
+	 * waiting fetch.
+	 */
+	private void releaseFetchSlot() {
+		synchronized (fetchStates) {
+			--runningFetches;
+			startFetches();
 		}
+	}
 
-		/* parse profile. */
-		String profileFirstName = profileXml.getValue("first-name", null);
-		String profileMiddleName = profileXml.getValue("middle-name", null);
-		String profileLastName = profileXml.getValue("last-name", null);
-		Integer profileBirthDay = Numbers.safeParseInteger(profileXml.getValue("birth-day", null));
-		Integer profileBirthMonth = Numbers.safeParseInteger(profileXml.getValue("birth-month", null));
-		Integer profileBirthYear = Numbers.safeParseInteger(profileXml.getValue("birth-year", null));
-		Profile profile = new Profile().setFirstName(profileFirstName).setMiddleName(profileMiddleName).setLastName(profileLastName);
-		profile.setBirthDay(profileBirthDay).setBirthMonth(profileBirthMonth).setBirthYear(profileBirthYear);
-
-		/* parse profile fields. */
-		SimpleXML profileFieldsXml = profileXml.getNode("fields");
-		if (profileFieldsXml != null) {
-			for (SimpleXML fieldXml : profileFieldsXml.getNodes("field")) {
-				String fieldName = fieldXml.getValue("field-name", null);
-				String fieldValue = fieldXml.getValue("field-value", null);
-				if ((fieldName == null) || (fieldValue == null)) {
-					logger.log(Level.WARNING, "Downloaded profile field for Sone %s with missing data! Name: %s, Value: %s", new Object[] { sone, fieldName, fieldValue });
-					return null;
-				}
-				try {
-					profile.addField(fieldName).setValue(fieldValue);
-				} catch (IllegalArgumentException iae1) {
-					logger.log(Level.WARNING, "Duplicate field: " + fieldName, iae1);
-					return null;
+	/**
+	 * Queues fetches of all Sones for which an edition has been requested
+	 * that has not been fetched, and that are neither waiting for nor running
+	 * a fetch. This fetches Sones again whose fetch failed or whose fetch was
+	 * not scheduled because the Sone was backing off, once their backoff has
+	 * ended.
+	 */
+	private void retryFetches() {
+		int retriedSones = 0;
+		synchronized (fetchStates) {
+			for (Entry<Sone, FetchState> fetchStateEntry : fetchStates.entrySet()) {
+				FetchState fetchState = fetchStateEntry.getValue();
+				if ((fetchState.requestedEdition <= fetchState.fetchedEdition) || fetchState.queued || fetchState.fetching || fetchState.health.isBackingOff()) {
+					continue;
 				}
+				queueFetch(fetchStateEntry.getKey(), fetchState);
+				++retriedSones;
 			}
 		}
+		if (retriedSones > 0) {
+			logger.log(Level.FINE, "Fetching %d Sones again.", retriedSones);
+		}
+	}
 
-		/* parse posts. */
-		SimpleXML postsXml = soneXml.getNode("posts");
-		Set<Post> posts = new HashSet<Post>();
-		if (postsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s has no posts!", new Object[] { sone });
-		} else {
-			for (SimpleXML postXml : postsXml.getNodes("post")) {
-				String postId = postXml.getValue("id", null);
-				String postRecipientId = postXml.getValue("recipient", null);
-				String postTime = postXml.getValue("time", null);
-				String postText = postXml.getValue("text", null);
-				if ((postId == null) || (postTime == null) || (postText == null)) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, "Downloaded post for Sone %s with missing data! ID: %s, Time: %s, Text: %s", new Object[] { sone, postId, postTime, postText });
-					return null;
-				}
-				try {
-					Post post = core.getPost(postId).setSone(sone).setTime(Long.parseLong(postTime)).setText(postText);
-					if ((postRecipientId != null) && (postRecipientId.length() == 43)) {
-						post.setRecipient(core.getSone(postRecipientId));
-					}
-					posts.add(post);
-				} catch (NumberFormatException nfe1) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, "Downloaded post for Sone %s with invalid time: %s", new Object[] { sone, postTime });
-					return null;
-				}
+	/**
+	 * Moves all Sones to their current {@link PollingTier}.
+	 */
+	private void updatePollingTiers() {
+		List<Sone> sones;
+		synchronized (this.sones) {
+			sones = new ArrayList<Sone>(this.sones);
+		}
+		long now = System.currentTimeMillis();
+		int dormantSones = 0;
+		for (Sone sone : sones) {
+			PollingTier pollingTier = getPollingTier(sone, now);
+			if (pollingTier == PollingTier.DORMANT) {
+				++dormantSones;
 			}
+			freenetInterface.setPollingTier(sone, pollingTier);
 		}
+		logger.log(Level.FINE, "Updated polling tiers, %d of %d Sones are dormant.", new Object[] { dormantSones, sones.size() });
+	}
 
-		/* parse replies. */
-		SimpleXML repliesXml = soneXml.getNode("replies");
-		Set<Reply> replies = new HashSet<Reply>();
-		if (repliesXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s has no replies!", new Object[] { sone });
-		} else {
-			for (SimpleXML replyXml : repliesXml.getNodes("reply")) {
-				String replyId = replyXml.getValue("id", null);
-				String replyPostId = replyXml.getValue("post-id", null);
-				String replyTime = replyXml.getValue("time", null);
-				String replyText = replyXml.getValue("text", null);
-				if ((replyId == null) || (replyPostId == null) || (replyTime == null) || (replyText == null)) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, "Downloaded reply for Sone %s with missing data! ID: %s, Post: %s, Time: %s, Text: %s", new Object[] { sone, replyId, replyPostId, replyTime, replyText });
-					return null;
-				}
-				try {
-					replies.add(core.getReply(replyId).setSone(sone).setPost(core.getPost(replyPostId)).setTime(Long.parseLong(replyTime)).setText(replyText));
-				} catch (NumberFormatException nfe1) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, "Downloaded reply for Sone %s with invalid time: %s", new Object[] { sone, replyTime });
-					return null;
-				}
+	/**
+	 * Returns the polling tier of the given Sone. Local Sones, Sones that are
+	 * followed by a local Sone, and Sones that have been updated recently are
+	 * {@link PollingTier#ACTIVE active}. All other Sones are
+	 * {@link PollingTier#DORMANT dormant}, except that they are promoted to
+	 * the active tier for {@link #PROMOTION_TIME} once per
+	 * {@link #PROMOTION_INTERVAL}. The promotions of the dormant Sones are
+	 * spread evenly over the interval; Sones that have not been fetched yet
+	 * are promoted right away.
+	 *
+	 * @param sone
+	 *            The Sone
+	 * @param now
+	 *            The current time (in milliseconds since Jan 1, 1970 UTC)
+	 * @return The polling tier of the Sone
+	 */
+	private PollingTier getPollingTier(Sone sone, long now) {
+		if ((getPriority(sone) != PRIORITY_OTHER) || ((now - sone.getTime()) < DORMANT_TIME)) {
+			return PollingTier.ACTIVE;
+		}
+		synchronized (fetchStates) {
+			FetchState fetchState = getFetchState(sone);
+			if (fetchState.promotionTime == 0) {
+				fetchState.promotionTime = (sone.getTime() == 0) ? now : (now - (long) (Math.random() * PROMOTION_INTERVAL));
+			} else if ((now - fetchState.promotionTime) >= PROMOTION_INTERVAL) {
+				fetchState.promotionTime = now;
 			}
+			return ((now - fetchState.promotionTime) < PROMOTION_TIME) ? PollingTier.ACTIVE : PollingTier.DORMANT;
 		}
+	}
 
-		/* parse liked post IDs. */
-		SimpleXML likePostIdsXml = soneXml.getNode("post-likes");
-		Set<String> likedPostIds = new HashSet<String>();
-		if (likePostIdsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s has no post likes!", new Object[] { sone });
-		} else {
-			for (SimpleXML likedPostIdXml : likePostIdsXml.getNodes("post-like")) {
-				String postId = likedPostIdXml.getValue();
-				likedPostIds.add(postId);
+	/**
+	 * Returns the priority of fetches of the given Sone. Lower values are
+	 * fetched first.
+	 *
+	 * @param sone
+	 *            The Sone to fetch
+	 * @return The priority of the fetch
+	 */
+	private int getPriority(Sone sone) {
+		if (core.isLocalSone(sone)) {
+			return PRIORITY_LOCAL;
+		}
+		for (Sone localSone : core.getLocalSones()) {
+			if (localSone.hasFriend(sone.getId())) {
+				return PRIORITY_FRIEND;
 			}
 		}
+		return PRIORITY_OTHER;
+	}
 
-		/* parse liked reply IDs. */
-		SimpleXML likeReplyIdsXml = soneXml.getNode("reply-likes");
-		Set<String> likedReplyIds = new HashSet<String>();
-		if (likeReplyIdsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, "Downloaded Sone %s has no reply likes!", new Object[] { sone });
-		} else {
-			for (SimpleXML likedReplyIdXml : likeReplyIdsXml.getNodes("reply-like")) {
-				String replyId = likedReplyIdXml.getValue();
-				likedReplyIds.add(replyId);
-			}
+	/**
+	 * The fetch state of a Sone.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class FetchState {
+
+		/** The highest edition that has been requested. */
+		private long requestedEdition = -1;
+
+		/** The highest edition that has been fetched and parsed. */
+		private long fetchedEdition = -1;
+
+		/** Whether a fetch is waiting to be run. */
+		private boolean queued;
+
+		/** Whether a fetch is running. */
+		private boolean fetching;
+
+		/** The health record of the Sone. */
+		private final SoneHealth health = new SoneHealth();
+
+		/** The time the Sone was last promoted to the active polling tier. */
+		private long promotionTime;
+
+	}
+
+	/**
+	 * A task of the downloader. Tasks are ordered by their priority and, for
+	 * the same priority, by the order in which they were created.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private abstract static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+
+		/** The priority of the task. */
+		private final int priority;
+
+		/** The sequence number of the task. */
+		private final long sequence;
+
+		/**
+		 * Creates a new task.
+		 *
+		 * @param priority
+		 *            The priority of the task
+		 * @param sequence
+		 *            The sequence number of the task
+		 */
+		protected PrioritizedTask(int priority, long sequence) {
+			this.priority = priority;
+			this.sequence = sequence;
 		}
 
-		/* okay, apparently everything was parsed correctly. Now import. */
-		/* atomic setter operation on the Sone. */
-		synchronized (sone) {
-			sone.setProfile(profile);
-			sone.setPosts(posts);
-			sone.setReplies(replies);
-			sone.setLikePostIds(likedPostIds);
-			sone.setLikeReplyIds(likedReplyIds);
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(PrioritizedTask prioritizedTask) {
+			if (priority != prioritizedTask.priority) {
+				return (priority < prioritizedTask.priority) ? -1 : 1;
+			}
+			return (sequence < prioritizedTask.sequence) ? -1 : ((sequence > prioritizedTask.sequence) ? 1 : 0);
 		}
 
-		return sone;
 	}
 
-	//
-	// SERVICE METHODS
-	//
+	/**
+	 * A scheduled fetch of a Sone. The fetch only starts the asynchronous
+	 * request; once the Sone has been downloaded, a {@link ParseTask} is
+	 * queued that parses it.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private class Fetch extends PrioritizedTask {
+
+		/** The Sone to fetch. */
+		private final Sone sone;
+
+		/** Whether the slot of this fetch has been released. */
+		private final AtomicBoolean slotReleased = new AtomicBoolean();
+
+		/**
+		 * Creates a new fetch.
+		 *
+		 * @param sone
+		 *            The Sone to fetch
+		 * @param priority
+		 *            The priority of the fetch
+		 * @param sequence
+		 *            The sequence number of the fetch
+		 */
+		public Fetch(Sone sone, int priority, long sequence) {
+			super(priority, sequence);
+			this.sone = sone;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void run() {
+			final FetchState fetchState;
+			final long edition;
+			synchronized (fetchStates) {
+				fetchState = getFetchState(sone);
+				fetchState.queued = false;
+				fetchState.fetching = true;
+				edition = fetchState.requestedEdition;
+			}
+			try {
+				core.setSoneStatus(sone, SoneStatus.downloading);
+				FreenetURI requestUri = sone.getRequestUri().setMetaString(new String[] { "sone.xml" });
+				logger.log(Level.FINE, "Starting fetch for Sone “%s” from %s…", new Object[] { sone, requestUri });
+				freenetInterface.fetchUri(requestUri, maximumSoneSize, new FetchCallback() {
+
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public void fetchSucceeded(FreenetURI uri, FetchResult fetchResult) {
+						if (!releaseSlot()) {
+							/* the fetch has already been cleaned up. */
+							fetchResult.asBucket().free();
+							return;
+						}
+						try {
+							fetchExecutor.execute(new ParseTask(sone, fetchState, edition, uri, fetchResult));
+						} catch (RejectedExecutionException ree1) {
+							fetchResult.asBucket().free();
+							finishFetch(sone, fetchState, edition);
+						}
+					}
+
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public void fetchFailed(FreenetURI uri, FetchException fetchException) {
+						if (!releaseSlot()) {
+							/* the fetch has already been cleaned up. */
+							return;
+						}
+						if (fetchException.getMode() == FetchException.TOO_BIG) {
+							oversizedSones.incrementAndGet();
+							recordFailure(sone, Type.SONE_TOO_LARGE, "Larger than " + maximumSoneSize + " bytes.");
+						} else {
+							recordFailure(sone, Type.FETCH_FAILED, "Could not fetch " + uri + ".");
+						}
+						finishFetch(sone, fetchState, edition);
+					}
+
+				});
+			} catch (RuntimeException re1) {
+				logger.log(Level.WARNING, "Could not start fetch of Sone " + sone + "!", re1);
+				/* only clean up if the callback has not been called. */
+				if (releaseSlot()) {
+					recordFailure(sone, Type.FETCH_FAILED, "Could not start fetch: " + re1);
+					finishFetch(sone, fetchState, edition);
+				}
+			}
+		}
+
+		/**
+		 * Releases the fetch slot of this fetch, unless it has already been
+		 * released.
+		 *
+		 * @return {@code true} if the slot was released by this call,
+		 *         {@code false} if it had already been released
+		 */
+		@SuppressWarnings("synthetic-access")
+		private boolean releaseSlot() {
+			if (!slotReleased.compareAndSet(false, true)) {
+				return false;
+			}
+			releaseFetchSlot();
+			return true;
+		}
+
+	}
 
 	/**
-	 * {@inheritDoc}
+	 * Parses a downloaded Sone and updates the stored Sone. Parse tasks are
+	 * run before any new fetches are started.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
 	 */
-	@Override
-	protected void serviceStop() {
-		for (Sone sone : sones) {
-			freenetInterface.unregisterUsk(sone);
+	private class ParseTask extends PrioritizedTask {
+
+		/** The downloaded Sone. */
+		private final Sone sone;
+
+		/** The fetch state of the Sone. */
+		private final FetchState fetchState;
+
+		/** The edition that was requested when the fetch was started. */
+		private final long edition;
+
+		/** The URI the Sone was fetched from. */
+		private final FreenetURI uri;
+
+		/** The result of the fetch. */
+		private final FetchResult fetchResult;
+
+		/**
+		 * Creates a new parse task.
+		 *
+		 * @param sone
+		 *            The downloaded Sone
+		 * @param fetchState
+		 *            The fetch state of the Sone
+		 * @param edition
+		 *            The edition that was requested when the fetch was started
+		 * @param uri
+		 *            The URI the Sone was fetched from
+		 * @param fetchResult
+		 *            The result of the fetch
+		 */
+		@SuppressWarnings("synthetic-access")
+		public ParseTask(Sone sone, FetchState fetchState, long edition, FreenetURI uri, FetchResult fetchResult) {
+			super(PRIORITY_PARSE, fetchCounter.getAndIncrement());
+			this.sone = sone;
+			this.fetchState = fetchState;
+			this.edition = edition;
+			this.uri = uri;
+			this.fetchResult = fetchResult;
 		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		@SuppressWarnings("synthetic-access")
+		public void run() {
+			try {
+				Sone parsedSone = parseFetchResult(sone, uri, fetchResult);
+				if (parsedSone != null) {
+					core.updateSone(parsedSone);
+					setFetchedEdition(sone, parsedSone.getLatestEdition());
+				}
+			} finally {
+				finishFetch(sone, fetchState, edition);
+			}
+		}
+
 	}
 
 }
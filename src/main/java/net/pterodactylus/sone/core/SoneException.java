@@ -37,6 +37,18 @@ public class SoneException extends Exception {
 		/** An invalid URI was specified. */
 		INVALID_URI,
 
+		/** A Sone could not be fetched. */
+		FETCH_FAILED,
+
+		/** A fetched Sone was larger than the maximum Sone size. */
+		SONE_TOO_LARGE,
+
+		/** A fetched Sone exceeded the limits of the parser. */
+		LIMITS_EXCEEDED,
+
+		/** A fetched Sone contained invalid data. */
+		INVALID_SONE,
+
 	}
 
 	/** The type of the exception. */
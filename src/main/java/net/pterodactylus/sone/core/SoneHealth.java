@@ -0,0 +1,219 @@
+/*
+ * FreenetSone - SoneHealth.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import net.pterodactylus.sone.core.SoneException.Type;
+
+/**
+ * Records the failed fetches of a Sone. After every consecutive failure the
+ * Sone is not fetched again for a backoff time that doubles with every
+ * failure, up to {@link #MAXIMUM_BACKOFF}. A successful fetch resets the
+ * backoff. Problems in a downloaded Sone that do not prevent it from being
+ * used are recorded as warnings; they do not affect the backoff.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneHealth {
+
+	/** The backoff after the first failure (in milliseconds). */
+	public static final long MINIMUM_BACKOFF = 60 * 1000;
+
+	/** The maximum backoff (in milliseconds). */
+	public static final long MAXIMUM_BACKOFF = 12 * 60 * 60 * 1000;
+
+	/** The total number of failed fetches. */
+	private int failures;
+
+	/** The number of failed fetches since the last successful fetch. */
+	private int consecutiveFailures;
+
+	/** The type of the last failure. */
+	private Type lastFailureType;
+
+	/** The reason of the last failure. */
+	private String lastFailureReason;
+
+	/** The time of the last failure. */
+	private long lastFailureTime;
+
+	/** The time before which the Sone is not fetched again. */
+	private long backoffUntil;
+
+	/** The number of warnings. */
+	private int warnings;
+
+	/** The last warning. */
+	private String lastWarning;
+
+	/** The time of the last warning. */
+	private long lastWarningTime;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the total number of failed fetches.
+	 *
+	 * @return The number of failed fetches
+	 */
+	public synchronized int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Returns whether a fetch of the Sone has ever failed.
+	 *
+	 * @return {@code true} if a fetch of the Sone has failed, {@code false}
+	 *         otherwise
+	 */
+	public synchronized boolean isFailed() {
+		return failures > 0;
+	}
+
+	/**
+	 * Returns the number of failed fetches since the last successful fetch.
+	 *
+	 * @return The number of consecutive failed fetches
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Returns the type of the last failure.
+	 *
+	 * @return The type of the last failure, or {@code null} if no fetch has
+	 *         failed yet
+	 */
+	public synchronized Type getLastFailureType() {
+		return lastFailureType;
+	}
+
+	/**
+	 * Returns the reason of the last failure.
+	 *
+	 * @return The reason of the last failure, or {@code null} if no fetch has
+	 *         failed yet
+	 */
+	public synchronized String getLastFailureReason() {
+		return lastFailureReason;
+	}
+
+	/**
+	 * Returns the time of the last failure.
+	 *
+	 * @return The time of the last failure (in milliseconds since Jan 1, 1970
+	 *         UTC), or {@code 0} if no fetch has failed yet
+	 */
+	public synchronized long getLastFailureTime() {
+		return lastFailureTime;
+	}
+
+	/**
+	 * Returns the time before which the Sone is not fetched again.
+	 *
+	 * @return The end of the backoff (in milliseconds since Jan 1, 1970 UTC)
+	 */
+	public synchronized long getBackoffUntil() {
+		return backoffUntil;
+	}
+
+	/**
+	 * Returns whether the Sone should currently not be fetched.
+	 *
+	 * @return {@code true} if the backoff of the Sone has not yet ended,
+	 *         {@code false} otherwise
+	 */
+	public synchronized boolean isBackingOff() {
+		return System.currentTimeMillis() < backoffUntil;
+	}
+
+	/**
+	 * Returns the total number of warnings.
+	 *
+	 * @return The number of warnings
+	 */
+	public synchronized int getWarnings() {
+		return warnings;
+	}
+
+	/**
+	 * Returns the last warning.
+	 *
+	 * @return The last warning, or {@code null} if there has been no warning
+	 *         yet
+	 */
+	public synchronized String getLastWarning() {
+		return lastWarning;
+	}
+
+	/**
+	 * Returns the time of the last warning.
+	 *
+	 * @return The time of the last warning (in milliseconds since Jan 1, 1970
+	 *         UTC), or {@code 0} if there has been no warning yet
+	 */
+	public synchronized long getLastWarningTime() {
+		return lastWarningTime;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records a successful fetch, resetting the backoff.
+	 */
+	public synchronized void fetchSucceeded() {
+		consecutiveFailures = 0;
+		backoffUntil = 0;
+	}
+
+	/**
+	 * Records a failed fetch and extends the backoff.
+	 *
+	 * @param type
+	 *            The type of the failure
+	 * @param reason
+	 *            The reason of the failure
+	 */
+	public synchronized void fetchFailed(Type type, String reason) {
+		failures++;
+		consecutiveFailures++;
+		lastFailureType = type;
+		lastFailureReason = reason;
+		lastFailureTime = System.currentTimeMillis();
+		long backoff = MINIMUM_BACKOFF << Math.min(consecutiveFailures - 1, 30);
+		backoffUntil = lastFailureTime + Math.min(backoff, MAXIMUM_BACKOFF);
+	}
+
+	/**
+	 * Records a problem in a downloaded Sone that does not prevent the Sone
+	 * from being used.
+	 *
+	 * @param warning
+	 *            The warning
+	 */
+	public synchronized void warningFound(String warning) {
+		warnings++;
+		lastWarning = warning;
+		lastWarningTime = System.currentTimeMillis();
+	}
+
+}
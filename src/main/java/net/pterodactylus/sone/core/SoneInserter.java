@@ -20,16 +20,12 @@ package net.pterodactylus.sone.core;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.sone.core.Core.SoneStatus;
-import net.pterodactylus.sone.data.Post;
-import net.pterodactylus.sone.data.Reply;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.freenet.StringBucket;
 import net.pterodactylus.sone.main.SonePlugin;
@@ -155,26 +151,35 @@ public class SoneInserter extends AbstractService {
 	@Override
 	protected void serviceRun() {
 		long lastModificationTime = 0;
-		String lastFingerprint = "";
+		long lastModificationCounter = -1;
+		long lockedModificationCounter = -1;
+		long insertModificationCounter = -1;
 		while (!shouldStop()) {
 			/* check every seconds. */
 			sleep(1000);
 
 			/* don’t insert locked Sones. */
 			if (core.isLocked(sone)) {
-				/* trigger redetection when the Sone is unlocked. */
 				synchronized (sone) {
-					modified = !sone.getFingerprint().equals(lastInsertFingerprint);
+					long modificationCounter = sone.getModificationCounter();
+					if (modificationCounter != lockedModificationCounter) {
+						modified = !sone.getFingerprint().equals(lastInsertFingerprint);
+						lockedModificationCounter = modificationCounter;
+					}
 				}
-				lastFingerprint = "";
+				/* trigger redetection when the Sone is unlocked. */
+				lastModificationCounter = -1;
 				lastModificationTime = 0;
 				continue;
 			}
+			lockedModificationCounter = -1;
 
 			InsertInformation insertInformation = null;
 			synchronized (sone) {
-				String fingerprint = sone.getFingerprint();
-				if (!fingerprint.equals(lastFingerprint)) {
+				/* only create the fingerprint if the Sone has been changed. */
+				long modificationCounter = sone.getModificationCounter();
+				if (modificationCounter != lastModificationCounter) {
+					String fingerprint = sone.getFingerprint();
 					if (fingerprint.equals(lastInsertFingerprint)) {
 						modified = false;
 						lastModificationTime = 0;
@@ -185,10 +190,11 @@ public class SoneInserter extends AbstractService {
 						sone.setTime(lastModificationTime);
 						logger.log(Level.FINE, "Sone %s has been modified, waiting %d seconds before inserting.", new Object[] { sone.getName(), insertionDelay });
 					}
-					lastFingerprint = fingerprint;
+					lastModificationCounter = modificationCounter;
 				}
 				if (modified && (lastModificationTime > 0) && ((System.currentTimeMillis() - lastModificationTime) > (insertionDelay * 1000))) {
-					lastInsertFingerprint = fingerprint;
+					lastInsertFingerprint = sone.getFingerprint();
+					insertModificationCounter = modificationCounter;
 					insertInformation = new InsertInformation(sone);
 				}
 			}
@@ -220,7 +226,7 @@ public class SoneInserter extends AbstractService {
 				 */
 				if (success) {
 					synchronized (sone) {
-						if (lastInsertFingerprint.equals(sone.getFingerprint())) {
+						if (insertModificationCounter == sone.getModificationCounter()) {
 							logger.log(Level.FINE, "Sone “%s” was not modified further, resetting counter…", new Object[] { sone });
 							core.saveSone(sone);
 							lastModificationTime = 0;
@@ -257,10 +263,10 @@ public class SoneInserter extends AbstractService {
 			soneProperties.put("requestUri", sone.getRequestUri());
 			soneProperties.put("insertUri", sone.getInsertUri());
 			soneProperties.put("profile", sone.getProfile());
-			soneProperties.put("posts", new ArrayList<Post>(sone.getPosts()));
-			soneProperties.put("replies", new HashSet<Reply>(sone.getReplies()));
-			soneProperties.put("likedPostIds", new HashSet<String>(sone.getLikedPostIds()));
-			soneProperties.put("likedReplyIds", new HashSet<String>(sone.getLikedReplyIds()));
+			soneProperties.put("posts", sone.getPosts());
+			soneProperties.put("replies", sone.getReplies());
+			soneProperties.put("likedPostIds", sone.getLikedPostIds());
+			soneProperties.put("likedReplyIds", sone.getLikedReplyIds());
 		}
 
 		//
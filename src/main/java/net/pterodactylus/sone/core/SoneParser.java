@@ -0,0 +1,632 @@
+/*
+ * FreenetSone - SoneParser.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+import net.pterodactylus.sone.core.SoneException.Type;
+import net.pterodactylus.sone.data.Client;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Reply;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.logging.Logging;
+import net.pterodactylus.util.number.Numbers;
+
+import freenet.keys.FreenetURI;
+
+/**
+ * Parses the XML of a Sone as it is inserted by {@link SoneInserter}. The XML
+ * is read with a streaming pull parser; no document tree is built. The values
+ * of posts and replies are collected while reading and are only turned into
+ * {@link Post}s and {@link Reply}s once the whole document has been read and
+ * the protocol version has been checked. The parsed posts and replies, and
+ * the Sones and posts they refer to, are new objects that are not known to
+ * the {@link Core}; it is up to the core to take them over once it accepts
+ * the parsed Sone. Parsing is aborted as soon as the
+ * document exceeds the limits for the number of elements, the nesting depth,
+ * or the length of a text. Several Sones can be parsed concurrently by the
+ * same parser.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneParser {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneParser.class);
+
+	/** The maximum protocol version. */
+	private static final int MAX_PROTOCOL_VERSION = 0;
+
+	/** The maximum number of elements in a Sone. */
+	static final int MAXIMUM_ELEMENTS = 100000;
+
+	/** The maximum nesting depth of elements in a Sone. */
+	static final int MAXIMUM_DEPTH = 8;
+
+	/** The maximum length of the text of an element. */
+	static final int MAXIMUM_TEXT_LENGTH = 65536;
+
+	/** The factory for XML readers. */
+	/* synchronize access on this. */
+	private final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+	/** The number of Sones that exceeded the limits. */
+	private final AtomicInteger limitExceededCount = new AtomicInteger();
+
+	/**
+	 * Creates a new Sone parser.
+	 */
+	public SoneParser() {
+		xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of Sones that were rejected because they exceeded
+	 * the limits of this parser.
+	 *
+	 * @return The number of Sones that exceeded the limits
+	 */
+	public int getLimitExceededCount() {
+		return limitExceededCount.get();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Parses a Sone from the given input stream and creates a new Sone from the
+	 * parsed data.
+	 *
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param soneInputStream
+	 *            The input stream to parse the Sone from
+	 * @param soneHealth
+	 *            The health record to record problems that do not prevent the
+	 *            Sone from being used in, or {@code null} to only log them
+	 * @return The parsed Sone
+	 * @throws SoneException
+	 *             if the Sone could not be parsed
+	 */
+	public Sone parseSone(Sone originalSone, InputStream soneInputStream, SoneHealth soneHealth) throws SoneException {
+		SoneValues soneValues;
+		try {
+			soneValues = readSone(soneInputStream);
+		} catch (LimitExceededException lee1) {
+			limitExceededCount.incrementAndGet();
+			throw new SoneException(Type.LIMITS_EXCEEDED, "Sone exceeds limits: " + lee1.getMessage(), lee1);
+		} catch (XMLStreamException xse1) {
+			throw new SoneException(Type.INVALID_SONE, "Could not parse XML: " + xse1.getMessage(), xse1);
+		}
+		if (soneValues == null) {
+			throw new SoneException(Type.INVALID_SONE, "Could not parse XML: no Sone element.");
+		}
+
+		Sone sone = new Sone(originalSone.getId()).setIdentity(originalSone.getIdentity());
+
+		Integer protocolVersion = null;
+		String soneProtocolVersion = soneValues.values.get("protocol-version");
+		if (soneProtocolVersion != null) {
+			protocolVersion = Numbers.safeParseInteger(soneProtocolVersion);
+		}
+		if (protocolVersion == null) {
+			logger.log(Level.INFO, "No protocol version found, assuming 0.");
+			protocolVersion = 0;
+		}
+
+		if (protocolVersion < 0) {
+			throw new SoneException(Type.INVALID_SONE, "Invalid protocol version: " + protocolVersion);
+		}
+
+		/* check for valid versions. */
+		if (protocolVersion > MAX_PROTOCOL_VERSION) {
+			throw new SoneException(Type.INVALID_SONE, "Unknown protocol version: " + protocolVersion);
+		}
+
+		String soneTime = soneValues.values.get("time");
+		if (soneTime == null) {
+			throw new SoneException(Type.INVALID_SONE, "Missing time.");
+		}
+		try {
+			sone.setTime(Long.parseLong(soneTime));
+		} catch (NumberFormatException nfe1) {
+			throw new SoneException(Type.INVALID_SONE, "Invalid time: " + soneTime, nfe1);
+		}
+
+		if (soneValues.client != null) {
+			String clientName = soneValues.client.get("name");
+			String clientVersion = soneValues.client.get("version");
+			if ((clientName == null) || (clientVersion == null)) {
+				throw new SoneException(Type.INVALID_SONE, "Client without name or version.");
+			}
+			sone.setClient(new Client(clientName, clientVersion));
+		}
+
+		String soneRequestUri = soneValues.values.get("request-uri");
+		if (soneRequestUri != null) {
+			try {
+				sone.setRequestUri(new FreenetURI(soneRequestUri));
+			} catch (MalformedURLException mue1) {
+				throw new SoneException(Type.INVALID_SONE, "Invalid request URI: " + soneRequestUri, mue1);
+			}
+		}
+
+		String soneInsertUri = soneValues.values.get("insert-uri");
+		if ((soneInsertUri != null) && (sone.getInsertUri() == null)) {
+			try {
+				sone.setInsertUri(new FreenetURI(soneInsertUri));
+				sone.setLatestEdition(Math.max(sone.getRequestUri().getSuggestedEdition(), sone.getInsertUri().getSuggestedEdition()));
+			} catch (MalformedURLException mue1) {
+				throw new SoneException(Type.INVALID_SONE, "Invalid insert URI: " + soneInsertUri, mue1);
+			}
+		}
+
+		if (soneValues.profile == null) {
+			throw new SoneException(Type.INVALID_SONE, "Missing profile.");
+		}
+
+		/* parse profile. */
+		String profileFirstName = soneValues.profile.get("first-name");
+		String profileMiddleName = soneValues.profile.get("middle-name");
+		String profileLastName = soneValues.profile.get("last-name");
+		Integer profileBirthDay = Numbers.safeParseInteger(soneValues.profile.get("birth-day"));
+		Integer profileBirthMonth = Numbers.safeParseInteger(soneValues.profile.get("birth-month"));
+		Integer profileBirthYear = Numbers.safeParseInteger(soneValues.profile.get("birth-year"));
+		Profile profile = new Profile().setFirstName(profileFirstName).setMiddleName(profileMiddleName).setLastName(profileLastName);
+		profile.setBirthDay(profileBirthDay).setBirthMonth(profileBirthMonth).setBirthYear(profileBirthYear);
+
+		/* parse profile fields. */
+		for (Map<String, String> field : soneValues.profileFields) {
+			String fieldName = field.get("field-name");
+			String fieldValue = field.get("field-value");
+			if ((fieldName == null) || (fieldValue == null)) {
+				throw new SoneException(Type.INVALID_SONE, "Profile field with missing data! Name: " + fieldName + ", Value: " + fieldValue);
+			}
+			try {
+				profile.addField(fieldName).setValue(fieldValue);
+			} catch (IllegalArgumentException iae1) {
+				throw new SoneException(Type.INVALID_SONE, "Duplicate profile field: " + fieldName, iae1);
+			}
+		}
+
+		/* parse posts. */
+		Set<Post> posts = new HashSet<Post>();
+		if (soneValues.posts == null) {
+			recordWarning(soneHealth, sone, "Sone has no posts.");
+		} else {
+			for (Map<String, String> postValues : soneValues.posts) {
+				String postId = postValues.get("id");
+				String postRecipientId = postValues.get("recipient");
+				String postTime = postValues.get("time");
+				String postText = postValues.get("text");
+				if ((postId == null) || (postTime == null) || (postText == null)) {
+					throw new SoneException(Type.INVALID_SONE, "Post with missing data! ID: " + postId + ", Time: " + postTime);
+				}
+				try {
+					Post post = new Post(postId, sone, Long.parseLong(postTime), postText);
+					if ((postRecipientId != null) && (postRecipientId.length() == 43)) {
+						post.setRecipient(new Sone(postRecipientId));
+					}
+					posts.add(post);
+				} catch (NumberFormatException nfe1) {
+					throw new SoneException(Type.INVALID_SONE, "Post with invalid time: " + postTime, nfe1);
+				} catch (IllegalArgumentException iae1) {
+					throw new SoneException(Type.INVALID_SONE, "Post with invalid ID: " + postId, iae1);
+				}
+			}
+		}
+
+		/* parse replies. */
+		Set<Reply> replies = new HashSet<Reply>();
+		if (soneValues.replies == null) {
+			recordWarning(soneHealth, sone, "Sone has no replies.");
+		} else {
+			for (Map<String, String> replyValues : soneValues.replies) {
+				String replyId = replyValues.get("id");
+				String replyPostId = replyValues.get("post-id");
+				String replyTime = replyValues.get("time");
+				String replyText = replyValues.get("text");
+				if ((replyId == null) || (replyPostId == null) || (replyTime == null) || (replyText == null)) {
+					throw new SoneException(Type.INVALID_SONE, "Reply with missing data! ID: " + replyId + ", Post: " + replyPostId + ", Time: " + replyTime);
+				}
+				try {
+					replies.add(new Reply(replyId, sone, new Post(replyPostId), Long.parseLong(replyTime), replyText));
+				} catch (NumberFormatException nfe1) {
+					throw new SoneException(Type.INVALID_SONE, "Reply with invalid time: " + replyTime, nfe1);
+				} catch (IllegalArgumentException iae1) {
+					throw new SoneException(Type.INVALID_SONE, "Reply with invalid ID: " + replyId + ", Post: " + replyPostId, iae1);
+				}
+			}
+		}
+
+		/* parse liked post IDs. */
+		Set<String> likedPostIds = new HashSet<String>();
+		if (soneValues.likedPostIds == null) {
+			recordWarning(soneHealth, sone, "Sone has no post likes.");
+		} else {
+			likedPostIds.addAll(soneValues.likedPostIds);
+		}
+
+		/* parse liked reply IDs. */
+		Set<String> likedReplyIds = new HashSet<String>();
+		if (soneValues.likedReplyIds == null) {
+			recordWarning(soneHealth, sone, "Sone has no reply likes.");
+		} else {
+			likedReplyIds.addAll(soneValues.likedReplyIds);
+		}
+
+		/* okay, apparently everything was parsed correctly. Now import. */
+		/* atomic setter operation on the Sone. */
+		synchronized (sone) {
+			sone.setProfile(profile);
+			sone.setPosts(posts);
+			sone.setReplies(replies);
+			sone.setLikePostIds(likedPostIds);
+			sone.setLikeReplyIds(likedReplyIds);
+		}
+
+		return sone;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Logs the given problem of the given Sone and records it in the given
+	 * health record.
+	 *
+	 * @param soneHealth
+	 *            The health record of the Sone, or {@code null}
+	 * @param sone
+	 *            The Sone that has the problem
+	 * @param warning
+	 *            The problem of the Sone
+	 */
+	private static void recordWarning(SoneHealth soneHealth, Sone sone, String warning) {
+		logger.log(Level.WARNING, "Downloaded Sone %s: %s", new Object[] { sone, warning });
+		if (soneHealth != null) {
+			soneHealth.warningFound(warning);
+		}
+	}
+
+	/**
+	 * Reads the values of a Sone from the given input stream. Of elements
+	 * that occur more than once only the first is used.
+	 *
+	 * @param soneInputStream
+	 *            The input stream to read the Sone from
+	 * @return The values of the Sone, or {@code null} if the document does
+	 *         not contain any element
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private SoneValues readSone(InputStream soneInputStream) throws XMLStreamException {
+		XMLStreamReader reader;
+		synchronized (this) {
+			reader = new LimitingStreamReader(xmlInputFactory.createXMLStreamReader(soneInputStream));
+		}
+		try {
+			if (nextElement(reader) != XMLStreamConstants.START_ELEMENT) {
+				return null;
+			}
+			SoneValues soneValues = new SoneValues();
+			while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+				String name = reader.getLocalName();
+				if ("client".equals(name) && (soneValues.client == null)) {
+					soneValues.client = readValues(reader);
+				} else if ("profile".equals(name) && (soneValues.profile == null)) {
+					soneValues.profile = new HashMap<String, String>();
+					readProfile(reader, soneValues.profile, soneValues.profileFields);
+				} else if ("posts".equals(name) && (soneValues.posts == null)) {
+					soneValues.posts = readValueList(reader, "post");
+				} else if ("replies".equals(name) && (soneValues.replies == null)) {
+					soneValues.replies = readValueList(reader, "reply");
+				} else if ("post-likes".equals(name) && (soneValues.likedPostIds == null)) {
+					soneValues.likedPostIds = readTextList(reader, "post-like");
+				} else if ("reply-likes".equals(name) && (soneValues.likedReplyIds == null)) {
+					soneValues.likedReplyIds = readTextList(reader, "reply-like");
+				} else {
+					String text = readText(reader);
+					if (!soneValues.values.containsKey(name)) {
+						soneValues.values.put(name, text);
+					}
+				}
+			}
+			return soneValues;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Reads the profile and its fields. The reader has to be positioned at
+	 * the start of the profile element.
+	 *
+	 * @param reader
+	 *            The XML reader
+	 * @param profile
+	 *            The map to store the values of the profile in
+	 * @param fields
+	 *            The list to store the values of the fields in
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private void readProfile(XMLStreamReader reader, Map<String, String> profile, List<Map<String, String>> fields) throws XMLStreamException {
+		boolean fieldsRead = false;
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			if ("fields".equals(name) && !fieldsRead) {
+				fields.addAll(readValueList(reader, "field"));
+				fieldsRead = true;
+			} else {
+				String text = readText(reader);
+				if (!profile.containsKey(name)) {
+					profile.put(name, text);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the values of all child elements with the given name. The reader
+	 * has to be positioned at the start of the parent element.
+	 *
+	 * @see #readValues(XMLStreamReader)
+	 * @param reader
+	 *            The XML reader
+	 * @param elementName
+	 *            The name of the child elements
+	 * @return The values of the child elements
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private List<Map<String, String>> readValueList(XMLStreamReader reader, String elementName) throws XMLStreamException {
+		List<Map<String, String>> valueList = new ArrayList<Map<String, String>>();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (elementName.equals(reader.getLocalName())) {
+				valueList.add(readValues(reader));
+			} else {
+				readText(reader);
+			}
+		}
+		return valueList;
+	}
+
+	/**
+	 * Reads the texts of all child elements with the given name. The reader
+	 * has to be positioned at the start of the parent element.
+	 *
+	 * @param reader
+	 *            The XML reader
+	 * @param elementName
+	 *            The name of the child elements
+	 * @return The texts of the child elements
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private List<String> readTextList(XMLStreamReader reader, String elementName) throws XMLStreamException {
+		List<String> texts = new ArrayList<String>();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			if (elementName.equals(reader.getLocalName())) {
+				texts.add(readText(reader));
+			} else {
+				readText(reader);
+			}
+		}
+		return texts;
+	}
+
+	/**
+	 * Reads the texts of all child elements, indexed by the names of the
+	 * elements. The reader has to be positioned at the start of the parent
+	 * element and is positioned at its end afterwards.
+	 *
+	 * @param reader
+	 *            The XML reader
+	 * @return The texts of the child elements
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private Map<String, String> readValues(XMLStreamReader reader) throws XMLStreamException {
+		Map<String, String> values = new HashMap<String, String>();
+		while (nextElement(reader) == XMLStreamConstants.START_ELEMENT) {
+			String name = reader.getLocalName();
+			String text = readText(reader);
+			if (!values.containsKey(name)) {
+				values.put(name, text);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Reads the text of the current element. Text in nested elements is
+	 * skipped. The reader has to be positioned at the start of the element
+	 * and is positioned at its end afterwards.
+	 *
+	 * @param reader
+	 *            The XML reader
+	 * @return The text of the element
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private String readText(XMLStreamReader reader) throws XMLStreamException {
+		StringBuilder text = new StringBuilder();
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				++depth;
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				--depth;
+			} else if ((depth == 1) && ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE))) {
+				if ((text.length() + reader.getTextLength()) > MAXIMUM_TEXT_LENGTH) {
+					throw new LimitExceededException("Text longer than " + MAXIMUM_TEXT_LENGTH + " characters.");
+				}
+				text.append(reader.getText());
+			} else if (event == XMLStreamConstants.END_DOCUMENT) {
+				throw new XMLStreamException("Unexpected end of document.");
+			}
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Advances the reader to the start of the next element or the end of the
+	 * current element, skipping text, comments, and processing instructions.
+	 *
+	 * @param reader
+	 *            The XML reader
+	 * @return {@link XMLStreamConstants#START_ELEMENT},
+	 *         {@link XMLStreamConstants#END_ELEMENT}, or
+	 *         {@link XMLStreamConstants#END_DOCUMENT}
+	 * @throws XMLStreamException
+	 *             if the XML can not be parsed
+	 */
+	private int nextElement(XMLStreamReader reader) throws XMLStreamException {
+		while (reader.hasNext()) {
+			int event = reader.next();
+			if ((event == XMLStreamConstants.START_ELEMENT) || (event == XMLStreamConstants.END_ELEMENT)) {
+				return event;
+			}
+		}
+		return XMLStreamConstants.END_DOCUMENT;
+	}
+
+	/**
+	 * Exception that signals that a Sone exceeds the limits of the parser.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class LimitExceededException extends XMLStreamException {
+
+		/**
+		 * Creates a new limit exceeded exception.
+		 *
+		 * @param message
+		 *            The message of the exception
+		 */
+		public LimitExceededException(String message) {
+			super(message);
+		}
+
+	}
+
+	/**
+	 * XML reader that counts the elements and the nesting depth of the
+	 * document and aborts when they exceed the limits.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class LimitingStreamReader extends StreamReaderDelegate {
+
+		/** The number of elements read so far. */
+		private int elements;
+
+		/** The current nesting depth. */
+		private int depth;
+
+		/**
+		 * Creates a new limiting reader.
+		 *
+		 * @param reader
+		 *            The reader to read from
+		 */
+		public LimitingStreamReader(XMLStreamReader reader) {
+			super(reader);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int next() throws XMLStreamException {
+			int event = super.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				if (++elements > MAXIMUM_ELEMENTS) {
+					throw new LimitExceededException("More than " + MAXIMUM_ELEMENTS + " elements.");
+				}
+				if (++depth > MAXIMUM_DEPTH) {
+					throw new LimitExceededException("Elements nested deeper than " + MAXIMUM_DEPTH + " levels.");
+				}
+			} else if (event == XMLStreamConstants.END_ELEMENT) {
+				--depth;
+			}
+			return event;
+		}
+
+	}
+
+	/**
+	 * Container for the values that are read from the XML of a Sone.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class SoneValues {
+
+		/** The texts of the top-level elements. */
+		private final Map<String, String> values = new HashMap<String, String>();
+
+		/** The values of the client, or {@code null}. */
+		private Map<String, String> client;
+
+		/** The values of the profile, or {@code null}. */
+		private Map<String, String> profile;
+
+		/** The values of the profile fields. */
+		private final List<Map<String, String>> profileFields = new ArrayList<Map<String, String>>();
+
+		/** The values of the posts, or {@code null}. */
+		private List<Map<String, String>> posts;
+
+		/** The values of the replies, or {@code null}. */
+		private List<Map<String, String>> replies;
+
+		/** The IDs of the liked posts, or {@code null}. */
+		private List<String> likedPostIds;
+
+		/** The IDs of the liked replies, or {@code null}. */
+		private List<String> likedReplyIds;
+
+	}
+
+}
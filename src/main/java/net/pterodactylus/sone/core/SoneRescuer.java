@@ -0,0 +1,352 @@
+/*
+ * FreenetSone - SoneRescuer.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.Reply;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.logging.Logging;
+import net.pterodactylus.util.number.Numbers;
+
+/**
+ * Restores a local Sone from the editions it has inserted into Freenet. The
+ * editions are fetched from the newest to the oldest, several at a time, so
+ * they are merged in no particular order. Merging does not depend on the
+ * order: {@link Core#updateSone(Sone)} takes the time, the client, and the
+ * profile only from an edition that is newer than the Sone, and older
+ * editions only add posts, replies, and likes.
+ * <p>
+ * The rescue stops when all editions have been fetched, when the configured
+ * depth has been reached, or when a configurable number of fetched editions
+ * in a row did not contain any posts, replies, or likes that were not
+ * already recovered. The latter is a heuristic: it assumes that a Sone
+ * rarely goes that many editions without new content and that older
+ * editions therefore hold nothing new either, which is not guaranteed.
+ * <p>
+ * The progress of a rescue is stored in a {@link Journal} so that a rescue
+ * that is interrupted continues at the edition it stopped at.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneRescuer {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneRescuer.class);
+
+	/** The number of editions that are fetched concurrently. */
+	private static final int RESCUE_THREADS = 4;
+
+	/**
+	 * The default number of editions without new data after which a rescue
+	 * stops.
+	 */
+	public static final int DEFAULT_IDLE_EDITIONS = 20;
+
+	/** The core. */
+	private final Core core;
+
+	/** The Sone downloader. */
+	private final SoneDownloader soneDownloader;
+
+	/** The Sone to rescue. */
+	private final Sone sone;
+
+	/** The journal that stores the progress of the rescue. */
+	private final Journal journal;
+
+	/** The maximum number of editions to fetch, {@code 0} for all editions. */
+	private final int depth;
+
+	/**
+	 * The number of editions without new data after which the rescue stops,
+	 * {@code 0} to never stop because of missing new data.
+	 */
+	private final int maximumIdleEditions;
+
+	/** The edition the rescue started at. */
+	/* synchronize access on this. */
+	private long startEdition;
+
+	/** The next edition to fetch. */
+	/* synchronize access on this. */
+	private long nextEdition;
+
+	/** The oldest edition that will be fetched. */
+	/* synchronize access on this. */
+	private long lastEdition;
+
+	/** The editions that are currently being fetched. */
+	/* synchronize access on this. */
+	private final SortedSet<Long> runningEditions = new TreeSet<Long>();
+
+	/** The number of fetched editions in a row that contained no new data. */
+	/* synchronize access on this. */
+	private int idleEditions;
+
+	/** Whether the rescue should stop. */
+	private volatile boolean stopped;
+
+	/**
+	 * Creates a new Sone rescuer.
+	 *
+	 * @param core
+	 *            The core
+	 * @param soneDownloader
+	 *            The Sone downloader
+	 * @param sone
+	 *            The Sone to rescue
+	 * @param directory
+	 *            The directory to store the progress of the rescue in
+	 * @param depth
+	 *            The maximum number of editions to fetch, {@code 0} to fetch
+	 *            all editions
+	 * @param maximumIdleEditions
+	 *            The number of fetched editions in a row without new data
+	 *            after which the rescue stops, {@code 0} to fetch editions
+	 *            regardless of new data
+	 */
+	public SoneRescuer(Core core, SoneDownloader soneDownloader, Sone sone, File directory, int depth, int maximumIdleEditions) {
+		this.core = core;
+		this.soneDownloader = soneDownloader;
+		this.sone = sone;
+		this.journal = new Journal(directory, sone.getId());
+		this.depth = depth;
+		this.maximumIdleEditions = maximumIdleEditions;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Rescues the Sone. This method returns when the rescue is finished or
+	 * has been {@link #stop() stopped}.
+	 *
+	 * @return {@code true} if the rescue was finished, {@code false} if it was
+	 *         stopped
+	 */
+	public boolean rescue() {
+		loadProgress();
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int threadIndex = 0; threadIndex < RESCUE_THREADS; ++threadIndex) {
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					rescueEditions();
+				}
+
+			}, "Sone Rescuer");
+			thread.start();
+			threads.add(thread);
+		}
+		for (Thread thread : threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException ie1) {
+				/* the threads will stop on their own. */
+				stopped = true;
+			}
+		}
+		if (shouldStop()) {
+			logger.log(Level.INFO, "Rescue of Sone %s was interrupted, will continue at edition %d.", new Object[] { sone, getResumeEdition() });
+			return false;
+		}
+		journal.delete();
+		return true;
+	}
+
+	/**
+	 * Stops the rescue. Editions that are currently being fetched are
+	 * finished first.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns whether the rescue should stop.
+	 *
+	 * @return {@code true} if the rescue should stop, {@code false} otherwise
+	 */
+	private boolean shouldStop() {
+		return stopped || !core.isSoneRescueMode();
+	}
+
+	/**
+	 * Fetches editions until there are no more editions to fetch.
+	 */
+	private void rescueEditions() {
+		long edition;
+		while ((edition = startNextEdition()) >= 0) {
+			boolean fetched = false;
+			boolean newData = false;
+			try {
+				logger.log(Level.FINE, "Downloading edition %d of Sone %s…", new Object[] { edition, sone });
+				Sone parsedSone = soneDownloader.fetchSoneData(sone, sone.getRequestUri().setKeyType("SSK").setDocName("Sone-" + edition));
+				if (parsedSone != null) {
+					fetched = true;
+					newData = containsNewData(parsedSone);
+					core.updateSone(parsedSone);
+				}
+			} finally {
+				finishEdition(edition, fetched, newData);
+			}
+		}
+	}
+
+	/**
+	 * Returns the next edition to fetch and marks it as running.
+	 *
+	 * @return The next edition to fetch, or {@code -1} if there are no more
+	 *         editions to fetch
+	 */
+	private synchronized long startNextEdition() {
+		if (shouldStop() || (nextEdition < lastEdition) || ((maximumIdleEditions > 0) && (idleEditions >= maximumIdleEditions))) {
+			return -1;
+		}
+		runningEditions.add(nextEdition);
+		return nextEdition--;
+	}
+
+	/**
+	 * Marks the given edition as finished and stores the progress.
+	 *
+	 * @param edition
+	 *            The finished edition
+	 * @param fetched
+	 *            {@code true} if the edition could be fetched, {@code false}
+	 *            otherwise
+	 * @param newData
+	 *            {@code true} if the edition contained data that was not
+	 *            recovered before, {@code false} otherwise
+	 */
+	private synchronized void finishEdition(long edition, boolean fetched, boolean newData) {
+		runningEditions.remove(edition);
+		if (fetched) {
+			idleEditions = newData ? 0 : (idleEditions + 1);
+		}
+		Map<String, String> progress = createProgress();
+		try {
+			if (journal.needsSnapshot(progress.size(), progress.size())) {
+				journal.writeSnapshot(progress);
+			} else {
+				journal.put("NextEdition", progress.get("NextEdition"));
+				journal.flush();
+			}
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not store progress of rescue of Sone " + sone + "!", ioe1);
+		}
+	}
+
+	/**
+	 * Returns the newest edition that has not yet been finished, i.e. the
+	 * edition a rescue would continue at.
+	 *
+	 * @return The edition to continue at
+	 */
+	private synchronized long getResumeEdition() {
+		return runningEditions.isEmpty() ? nextEdition : runningEditions.last();
+	}
+
+	/**
+	 * Loads the progress of an interrupted rescue, or starts a new rescue at
+	 * the latest edition of the Sone.
+	 */
+	private synchronized void loadProgress() {
+		startEdition = sone.getLatestEdition();
+		nextEdition = startEdition;
+		try {
+			Map<String, String> progress = journal.load();
+			if (progress != null) {
+				startEdition = Numbers.safeParseLong(progress.get("StartEdition"), startEdition);
+				nextEdition = Math.min(startEdition, Numbers.safeParseLong(progress.get("NextEdition"), startEdition));
+				logger.log(Level.INFO, "Continuing rescue of Sone %s at edition %d.", new Object[] { sone, nextEdition });
+			}
+			journal.writeSnapshot(createProgress());
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not load progress of rescue of Sone " + sone + "!", ioe1);
+		}
+		lastEdition = (depth > 0) ? Math.max(0, startEdition - depth + 1) : 0;
+		idleEditions = 0;
+	}
+
+	/**
+	 * Creates the values that describe the current progress of the rescue.
+	 *
+	 * @return The progress of the rescue
+	 */
+	private synchronized Map<String, String> createProgress() {
+		Map<String, String> progress = new HashMap<String, String>();
+		progress.put("StartEdition", String.valueOf(startEdition));
+		progress.put("NextEdition", String.valueOf(getResumeEdition()));
+		return progress;
+	}
+
+	/**
+	 * Returns whether the given parsed Sone contains posts, replies, or likes
+	 * that the rescued Sone does not yet contain.
+	 *
+	 * @param parsedSone
+	 *            The parsed Sone
+	 * @return {@code true} if the parsed Sone contains new data, {@code false}
+	 *         otherwise
+	 */
+	private boolean containsNewData(Sone parsedSone) {
+		synchronized (sone) {
+			Set<String> postIds = new HashSet<String>();
+			for (Post post : sone.getPosts()) {
+				postIds.add(post.getId());
+			}
+			for (Post post : parsedSone.getPosts()) {
+				if (!postIds.contains(post.getId())) {
+					return true;
+				}
+			}
+			Set<String> replyIds = new HashSet<String>();
+			for (Reply reply : sone.getReplies()) {
+				replyIds.add(reply.getId());
+			}
+			for (Reply reply : parsedSone.getReplies()) {
+				if (!replyIds.contains(reply.getId())) {
+					return true;
+				}
+			}
+			return !sone.getLikedPostIds().containsAll(parsedSone.getLikedPostIds()) || !sone.getLikedReplyIds().containsAll(parsedSone.getLikedReplyIds());
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * FreenetSone - SoneStore.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Storage for the data of Sones. The data of a Sone is a flat map of
+ * string keys to string values that is stored in a {@link Journal};
+ * {@link #save(String, Map)} only appends the keys that have changed since the
+ * last save to the journal.
+ * <p>
+ * To find the changed keys the store only remembers the SHA-1 digest of every
+ * stored value instead of a copy of the values.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneStore {
+
+	/** The charset used to create the digests of the values. */
+	private static final Charset utf8Charset = Charset.forName("UTF-8");
+
+	/** The directory the files are stored in. */
+	private final File directory;
+
+	/** The journals, indexed by Sone ID. */
+	/* synchronize access on this. */
+	private final Map<String, Journal> journals = new HashMap<String, Journal>();
+
+	/** The digests of the last stored values, indexed by Sone ID. */
+	/* synchronize access on this. */
+	private final Map<String, Map<String, byte[]>> storedDigests = new HashMap<String, Map<String, byte[]>>();
+
+	/** The message digest that creates the digests of the values. */
+	/* synchronize access on this. */
+	private final MessageDigest messageDigest;
+
+	/**
+	 * Creates a new Sone store.
+	 *
+	 * @param directory
+	 *            The directory to store the files in
+	 */
+	public SoneStore(File directory) {
+		this.directory = directory;
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException nsae1) {
+			/* every Java platform has to support SHA-1. */
+			throw new IllegalStateException("SHA-1 is not supported!", nsae1);
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Loads the data of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return The data of the Sone, or {@code null} if no data has been stored
+	 *         for the Sone
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized Map<String, String> load(String soneId) throws IOException {
+		Map<String, String> values = getJournal(soneId).load();
+		if (values != null) {
+			storedDigests.put(soneId, getDigests(values));
+		}
+		return values;
+	}
+
+	/**
+	 * Stores the data of the Sone with the given ID. Only the values that
+	 * have changed since the Sone was last loaded or stored are written.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param values
+	 *            The data of the Sone
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public synchronized void save(String soneId, Map<String, String> values) throws IOException {
+		Map<String, byte[]> oldDigests = storedDigests.get(soneId);
+		if (oldDigests == null) {
+			load(soneId);
+			oldDigests = storedDigests.get(soneId);
+			if (oldDigests == null) {
+				oldDigests = new HashMap<String, byte[]>();
+			}
+		}
+		Map<String, String> changes = new HashMap<String, String>();
+		Map<String, byte[]> newDigests = new HashMap<String, byte[]>(values.size() * 4 / 3 + 1);
+		for (Entry<String, String> value : values.entrySet()) {
+			byte[] newDigest = getDigest(value.getValue());
+			newDigests.put(value.getKey(), newDigest);
+			if (!Arrays.equals(oldDigests.get(value.getKey()), newDigest)) {
+				changes.put(value.getKey(), value.getValue());
+			}
+		}
+		for (String key : oldDigests.keySet()) {
+			if (!values.containsKey(key)) {
+				changes.put(key, null);
+			}
+		}
+		if (changes.isEmpty()) {
+			return;
+		}
+		Journal journal = getJournal(soneId);
+		try {
+			if (journal.needsSnapshot(changes.size(), values.size())) {
+				journal.writeSnapshot(values);
+			} else {
+				for (Entry<String, String> change : changes.entrySet()) {
+					if (change.getValue() == null) {
+						journal.remove(change.getKey());
+					} else {
+						journal.put(change.getKey(), change.getValue());
+					}
+				}
+				journal.flush();
+			}
+		} catch (IOException ioe1) {
+			/* reload the journal and compare against it on the next save. */
+			journals.remove(soneId);
+			storedDigests.remove(soneId);
+			throw ioe1;
+		}
+		storedDigests.put(soneId, newDigests);
+	}
+
+	/**
+	 * Removes all stored data of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 */
+	public synchronized void delete(String soneId) {
+		getJournal(soneId).delete();
+		journals.remove(soneId);
+		storedDigests.remove(soneId);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the journal of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return The journal of the Sone
+	 */
+	private Journal getJournal(String soneId) {
+		Journal journal = journals.get(soneId);
+		if (journal == null) {
+			journal = new Journal(directory, soneId);
+			journals.put(soneId, journal);
+		}
+		return journal;
+	}
+
+	/**
+	 * Returns the digests of the given values. The caller has to hold the lock
+	 * on this store.
+	 *
+	 * @param values
+	 *            The values
+	 * @return The digests of the values, indexed by key
+	 */
+	private Map<String, byte[]> getDigests(Map<String, String> values) {
+		Map<String, byte[]> digests = new HashMap<String, byte[]>(values.size() * 4 / 3 + 1);
+		for (Entry<String, String> value : values.entrySet()) {
+			digests.put(value.getKey(), getDigest(value.getValue()));
+		}
+		return digests;
+	}
+
+	/**
+	 * Returns the SHA-1 digest of the given value. The caller has to hold the
+	 * lock on this store.
+	 *
+	 * @param value
+	 *            The value
+	 * @return The digest of the value
+	 */
+	private byte[] getDigest(String value) {
+		return messageDigest.digest(value.getBytes(utf8Charset));
+	}
+
+}
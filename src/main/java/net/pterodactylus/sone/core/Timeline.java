@@ -0,0 +1,177 @@
+/*
+ * FreenetSone - Timeline.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import net.pterodactylus.sone.data.Post;
+
+/**
+ * The timeline of a local Sone, i.e. all posts of the Sone itself, of the
+ * Sones it follows, and all posts that are directed at it, sorted by time,
+ * newest first.
+ * <p>
+ * Posts are sorted by the time they had when they were added to the timeline
+ * so that a post that is modified in place can still be removed. The sorted
+ * list returned by {@link #getPosts()} is only rebuilt after the timeline has
+ * been changed.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Timeline {
+
+	/** The posts of this timeline, sorted by time, newest first. */
+	private final TreeMap<Key, Post> posts = new TreeMap<Key, Post>();
+
+	/** The keys of all posts, indexed by post ID. */
+	private final Map<String, Key> keys = new HashMap<String, Key>();
+
+	/** The sorted posts, or {@code null} if the timeline has been changed. */
+	private List<Post> sortedPosts;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns all posts of this timeline, sorted by time, newest first. The
+	 * returned list can not be modified.
+	 *
+	 * @return All posts of this timeline
+	 */
+	public synchronized List<Post> getPosts() {
+		if (sortedPosts == null) {
+			sortedPosts = Collections.unmodifiableList(new ArrayList<Post>(posts.values()));
+		}
+		return sortedPosts;
+	}
+
+	/**
+	 * Returns the number of posts in this timeline.
+	 *
+	 * @return The number of posts in this timeline
+	 */
+	public synchronized int size() {
+		return posts.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the given post to this timeline. If the post is already contained
+	 * in this timeline it is re-sorted according to its current time.
+	 *
+	 * @param post
+	 *            The post to add
+	 */
+	public synchronized void addPost(Post post) {
+		Key newKey = new Key(post.getTime(), post.getId());
+		Key oldKey = keys.put(post.getId(), newKey);
+		if (oldKey != null) {
+			posts.remove(oldKey);
+		}
+		posts.put(newKey, post);
+		sortedPosts = null;
+	}
+
+	/**
+	 * Adds all given posts to this timeline.
+	 *
+	 * @param posts
+	 *            The posts to add
+	 */
+	public synchronized void addPosts(Collection<Post> posts) {
+		for (Post post : posts) {
+			addPost(post);
+		}
+	}
+
+	/**
+	 * Removes the given post from this timeline.
+	 *
+	 * @param post
+	 *            The post to remove
+	 */
+	public synchronized void removePost(Post post) {
+		Key oldKey = keys.remove(post.getId());
+		if (oldKey != null) {
+			posts.remove(oldKey);
+			sortedPosts = null;
+		}
+	}
+
+	/**
+	 * Removes all given posts from this timeline.
+	 *
+	 * @param posts
+	 *            The posts to remove
+	 */
+	public synchronized void removePosts(Collection<Post> posts) {
+		for (Post post : posts) {
+			removePost(post);
+		}
+	}
+
+	/**
+	 * Sort key of a post in the timeline.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Key implements Comparable<Key> {
+
+		/** The time of the post. */
+		private final long time;
+
+		/** The ID of the post. */
+		private final String id;
+
+		/**
+		 * Creates a new sort key.
+		 *
+		 * @param time
+		 *            The time of the post
+		 * @param id
+		 *            The ID of the post
+		 */
+		public Key(long time, String id) {
+			this.time = time;
+			this.id = id;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(Key key) {
+			if (time != key.time) {
+				return (time > key.time) ? -1 : 1;
+			}
+			return id.compareTo(key.id);
+		}
+
+	}
+
+}
@@ -41,6 +41,9 @@ public class Post {
 	/** The GUID of the post. */
 	private final UUID id;
 
+	/** The string form of the ID, created only once. */
+	private final String stringId;
+
 	/** The Sone this post belongs to. */
 	private volatile Sone sone;
 
@@ -103,6 +106,7 @@ public class Post {
 	 */
 	public Post(String id, Sone sone, long time, String text) {
 		this.id = UUID.fromString(id);
+		this.stringId = this.id.toString();
 		this.sone = sone;
 		this.time = time;
 		this.text = text;
@@ -118,7 +122,7 @@ public class Post {
 	 * @return The ID of the post
 	 */
 	public String getId() {
-		return id.toString();
+		return stringId;
 	}
 
 	/**
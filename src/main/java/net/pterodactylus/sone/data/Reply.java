@@ -41,6 +41,9 @@ public class Reply {
 	/** The ID of the reply. */
 	private final UUID id;
 
+	/** The string form of the ID, created only once. */
+	private final String stringId;
+
 	/** The Sone that posted this reply. */
 	private volatile Sone sone;
 
@@ -109,6 +112,7 @@ public class Reply {
 	 */
 	public Reply(String id, Sone sone, Post post, long time, String text) {
 		this.id = UUID.fromString(id);
+		this.stringId = this.id.toString();
 		this.sone = sone;
 		this.post = post;
 		this.time = time;
@@ -125,7 +129,7 @@ public class Reply {
 	 * @return The ID of the reply
 	 */
 	public String getId() {
-		return id.toString();
+		return stringId;
 	}
 
 	/**
@@ -22,6 +22,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -37,6 +38,9 @@ import freenet.keys.FreenetURI;
  * replies, her likes and dislikes, etc.
  * <p>
  * Operations that modify the Sone need to synchronize on the Sone in question.
+ * Posts, replies, and likes are kept as immutable, sorted snapshots that are
+ * replaced on every modification so that they can be read without
+ * synchronization.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
@@ -87,17 +91,21 @@ public class Sone implements Fingerprintable {
 	/** All friend Sones. */
 	private final Set<String> friendSones = Collections.synchronizedSet(new HashSet<String>());
 
-	/** All posts. */
-	private final Set<Post> posts = Collections.synchronizedSet(new HashSet<Post>());
+	/** All posts, sorted by time, newest first. */
+	private volatile List<Post> posts = Collections.emptyList();
 
-	/** All replies. */
-	private final Set<Reply> replies = Collections.synchronizedSet(new HashSet<Reply>());
+	/** All replies, sorted by time, oldest first. */
+	private volatile Set<Reply> replies = Collections.emptySet();
 
-	/** The IDs of all liked posts. */
-	private final Set<String> likedPostIds = Collections.synchronizedSet(new HashSet<String>());
+	/** The IDs of all liked posts, sorted. */
+	private volatile Set<String> likedPostIds = Collections.emptySet();
 
-	/** The IDs of all liked replies. */
-	private final Set<String> likedReplyIds = Collections.synchronizedSet(new HashSet<String>());
+	/** The IDs of all liked replies, sorted. */
+	private volatile Set<String> likedReplyIds = Collections.emptySet();
+
+	/** The modification counter, changed whenever the fingerprint changes. */
+	/* only modify while synchronized on this Sone. */
+	private volatile long modificationCounter;
 
 	/**
 	 * Creates a new Sone.
@@ -281,6 +289,7 @@ public class Sone implements Fingerprintable {
 	 */
 	public synchronized void setProfile(Profile profile) {
 		this.profile = new Profile(profile);
+		modificationCounter++;
 	}
 
 	/**
@@ -367,16 +376,12 @@ public class Sone implements Fingerprintable {
 
 	/**
 	 * Returns the list of posts of this Sone, sorted by time, newest first.
+	 * The returned list can not be modified.
 	 *
 	 * @return All posts of this Sone
 	 */
 	public List<Post> getPosts() {
-		List<Post> sortedPosts;
-		synchronized (this) {
-			sortedPosts = new ArrayList<Post>(posts);
-		}
-		Collections.sort(sortedPosts, Post.TIME_COMPARATOR);
-		return sortedPosts;
+		return posts;
 	}
 
 	/**
@@ -387,8 +392,8 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone setPosts(Collection<Post> posts) {
-		this.posts.clear();
-		this.posts.addAll(posts);
+		this.posts = Collections.unmodifiableList(sort(posts, Post.TIME_COMPARATOR));
+		modificationCounter++;
 		return this;
 	}
 
@@ -400,7 +405,9 @@ public class Sone implements Fingerprintable {
 	 *            The post to add
 	 */
 	public synchronized void addPost(Post post) {
-		if (post.getSone().equals(this) && posts.add(post)) {
+		if (post.getSone().equals(this) && !posts.contains(post)) {
+			posts = Collections.unmodifiableList(insert(posts, post, Post.TIME_COMPARATOR));
+			modificationCounter++;
 			logger.log(Level.FINEST, "Adding %s to “%s”.", new Object[] { post, getName() });
 		}
 	}
@@ -412,18 +419,20 @@ public class Sone implements Fingerprintable {
 	 *            The post to remove
 	 */
 	public synchronized void removePost(Post post) {
-		if (post.getSone().equals(this)) {
-			posts.remove(post);
+		if (post.getSone().equals(this) && posts.contains(post)) {
+			posts = Collections.unmodifiableList(remove(posts, post));
+			modificationCounter++;
 		}
 	}
 
 	/**
-	 * Returns all replies this Sone made.
+	 * Returns all replies this Sone made, sorted by time, oldest first. The
+	 * returned set can not be modified.
 	 *
 	 * @return All replies this Sone made
 	 */
-	public synchronized Set<Reply> getReplies() {
-		return Collections.unmodifiableSet(replies);
+	public Set<Reply> getReplies() {
+		return replies;
 	}
 
 	/**
@@ -434,8 +443,8 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone setReplies(Collection<Reply> replies) {
-		this.replies.clear();
-		this.replies.addAll(replies);
+		this.replies = toSet(sort(replies, Reply.TIME_COMPARATOR));
+		modificationCounter++;
 		return this;
 	}
 
@@ -447,8 +456,9 @@ public class Sone implements Fingerprintable {
 	 *            The reply to add
 	 */
 	public synchronized void addReply(Reply reply) {
-		if (reply.getSone().equals(this)) {
-			replies.add(reply);
+		if (reply.getSone().equals(this) && !replies.contains(reply)) {
+			replies = toSet(insert(replies, reply, Reply.TIME_COMPARATOR));
+			modificationCounter++;
 		}
 	}
 
@@ -459,18 +469,20 @@ public class Sone implements Fingerprintable {
 	 *            The reply to remove
 	 */
 	public synchronized void removeReply(Reply reply) {
-		if (reply.getSone().equals(this)) {
-			replies.remove(reply);
+		if (reply.getSone().equals(this) && replies.contains(reply)) {
+			replies = toSet(remove(replies, reply));
+			modificationCounter++;
 		}
 	}
 
 	/**
-	 * Returns the IDs of all liked posts.
+	 * Returns the IDs of all liked posts, sorted. The returned set can not be
+	 * modified.
 	 *
 	 * @return All liked posts’ IDs
 	 */
 	public Set<String> getLikedPostIds() {
-		return Collections.unmodifiableSet(likedPostIds);
+		return likedPostIds;
 	}
 
 	/**
@@ -481,8 +493,8 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone setLikePostIds(Set<String> likedPostIds) {
-		this.likedPostIds.clear();
-		this.likedPostIds.addAll(likedPostIds);
+		this.likedPostIds = toSet(sort(likedPostIds, null));
+		modificationCounter++;
 		return this;
 	}
 
@@ -506,7 +518,10 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone addLikedPostId(String postId) {
-		likedPostIds.add(postId);
+		if (!likedPostIds.contains(postId)) {
+			likedPostIds = toSet(insert(likedPostIds, postId, null));
+			modificationCounter++;
+		}
 		return this;
 	}
 
@@ -518,17 +533,21 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone removeLikedPostId(String postId) {
-		likedPostIds.remove(postId);
+		if (likedPostIds.contains(postId)) {
+			likedPostIds = toSet(remove(likedPostIds, postId));
+			modificationCounter++;
+		}
 		return this;
 	}
 
 	/**
-	 * Returns the IDs of all liked replies.
+	 * Returns the IDs of all liked replies, sorted. The returned set can not be
+	 * modified.
 	 *
 	 * @return All liked replies’ IDs
 	 */
 	public Set<String> getLikedReplyIds() {
-		return Collections.unmodifiableSet(likedReplyIds);
+		return likedReplyIds;
 	}
 
 	/**
@@ -539,8 +558,8 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone setLikeReplyIds(Set<String> likedReplyIds) {
-		this.likedReplyIds.clear();
-		this.likedReplyIds.addAll(likedReplyIds);
+		this.likedReplyIds = toSet(sort(likedReplyIds, null));
+		modificationCounter++;
 		return this;
 	}
 
@@ -564,7 +583,10 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone addLikedReplyId(String replyId) {
-		likedReplyIds.add(replyId);
+		if (!likedReplyIds.contains(replyId)) {
+			likedReplyIds = toSet(insert(likedReplyIds, replyId, null));
+			modificationCounter++;
+		}
 		return this;
 	}
 
@@ -576,10 +598,25 @@ public class Sone implements Fingerprintable {
 	 * @return This Sone (for method chaining)
 	 */
 	public synchronized Sone removeLikedReplyId(String replyId) {
-		likedReplyIds.remove(replyId);
+		if (likedReplyIds.contains(replyId)) {
+			likedReplyIds = toSet(remove(likedReplyIds, replyId));
+			modificationCounter++;
+		}
 		return this;
 	}
 
+	/**
+	 * Returns the modification counter of this Sone. The counter is changed
+	 * whenever the profile, the posts, the replies, or the likes of this Sone
+	 * are changed, i.e. whenever the {@link #getFingerprint() fingerprint}
+	 * might have changed.
+	 *
+	 * @return The modification counter of this Sone
+	 */
+	public long getModificationCounter() {
+		return modificationCounter;
+	}
+
 	//
 	// FINGERPRINTABLE METHODS
 	//
@@ -588,34 +625,28 @@ public class Sone implements Fingerprintable {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public synchronized String getFingerprint() {
+	public String getFingerprint() {
 		StringBuilder fingerprint = new StringBuilder();
 		fingerprint.append(profile.getFingerprint());
 
 		fingerprint.append("Posts(");
-		for (Post post : getPosts()) {
+		for (Post post : posts) {
 			fingerprint.append("Post(").append(post.getId()).append(')');
 		}
 		fingerprint.append(")");
 
-		List<Reply> replies = new ArrayList<Reply>(getReplies());
-		Collections.sort(replies, Reply.TIME_COMPARATOR);
 		fingerprint.append("Replies(");
 		for (Reply reply : replies) {
 			fingerprint.append("Reply(").append(reply.getId()).append(')');
 		}
 		fingerprint.append(')');
 
-		List<String> likedPostIds = new ArrayList<String>(getLikedPostIds());
-		Collections.sort(likedPostIds);
 		fingerprint.append("LikedPosts(");
 		for (String likedPostId : likedPostIds) {
 			fingerprint.append("Post(").append(likedPostId).append(')');
 		}
 		fingerprint.append(')');
 
-		List<String> likedReplyIds = new ArrayList<String>(getLikedReplyIds());
-		Collections.sort(likedReplyIds);
 		fingerprint.append("LikedReplies(");
 		for (String likedReplyId : likedReplyIds) {
 			fingerprint.append("Reply(").append(likedReplyId).append(')');
@@ -625,6 +656,82 @@ public class Sone implements Fingerprintable {
 		return fingerprint.toString();
 	}
 
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns a sorted list of the given elements without duplicates.
+	 *
+	 * @param <T>
+	 *            The type of the elements
+	 * @param elements
+	 *            The elements to sort
+	 * @param comparator
+	 *            The comparator to sort with, or {@code null} to use the
+	 *            natural ordering of the elements
+	 * @return The sorted elements
+	 */
+	private static <T> List<T> sort(Collection<T> elements, Comparator<? super T> comparator) {
+		List<T> sortedElements = new ArrayList<T>(new HashSet<T>(elements));
+		Collections.sort(sortedElements, comparator);
+		return sortedElements;
+	}
+
+	/**
+	 * Returns a copy of the given sorted elements with the given element
+	 * inserted at its sorted position.
+	 *
+	 * @param <T>
+	 *            The type of the elements
+	 * @param sortedElements
+	 *            The sorted elements
+	 * @param element
+	 *            The element to insert
+	 * @param comparator
+	 *            The comparator the elements are sorted with, or {@code null}
+	 *            for the natural ordering of the elements
+	 * @return The sorted elements, including the new element
+	 */
+	private static <T> List<T> insert(Collection<T> sortedElements, T element, Comparator<? super T> comparator) {
+		List<T> newElements = new ArrayList<T>(sortedElements.size() + 1);
+		newElements.addAll(sortedElements);
+		int index = Collections.binarySearch(newElements, element, comparator);
+		newElements.add((index < 0) ? (-index - 1) : index, element);
+		return newElements;
+	}
+
+	/**
+	 * Returns a copy of the given elements without the given element.
+	 *
+	 * @param <T>
+	 *            The type of the elements
+	 * @param elements
+	 *            The elements
+	 * @param element
+	 *            The element to remove
+	 * @return The elements, without the removed element
+	 */
+	private static <T> List<T> remove(Collection<T> elements, T element) {
+		List<T> newElements = new ArrayList<T>(elements);
+		newElements.remove(element);
+		return newElements;
+	}
+
+	/**
+	 * Returns an unmodifiable set that iterates over the given elements in
+	 * their current order.
+	 *
+	 * @param <T>
+	 *            The type of the elements
+	 * @param sortedElements
+	 *            The sorted elements
+	 * @return An unmodifiable set of the elements
+	 */
+	private static <T> Set<T> toSet(List<T> sortedElements) {
+		return Collections.unmodifiableSet(new LinkedHashSet<T>(sortedElements));
+	}
+
 	//
 	// OBJECT METHODS
 	//
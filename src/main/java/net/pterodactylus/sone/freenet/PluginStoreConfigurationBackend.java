@@ -17,6 +17,9 @@
 
 package net.pterodactylus.sone.freenet;
 
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.util.config.AttributeNotFoundException;
@@ -30,23 +33,61 @@ import freenet.pluginmanager.PluginStore;
 
 /**
  * Backend for a {@link Configuration} that is based on a {@link PluginStore}.
+ * <p>
+ * Storing the plugin store is expensive so changed values only mark the store
+ * as dirty. The store is written when {@link #save()} is called, when a value
+ * is changed and the last write is older than the flush interval, or by a
+ * timer at the end of the flush interval so that changes are not held back
+ * until the next change arrives. {@link #stop()} writes pending changes and
+ * stops the timer.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
 public class PluginStoreConfigurationBackend implements ExtendedConfigurationBackend {
 
 	/** The logger. */
-	@SuppressWarnings("unused")
 	private static final Logger logger = Logging.getLogger(PluginStoreConfigurationBackend.class);
 
 	/** The plugin respirator. */
 	private final PluginRespirator pluginRespirator;
 
 	/** The backing plugin store. */
+	/* synchronize access on this. */
 	private final PluginStore pluginStore;
 
+	/** The minimum time between two writes caused by changed values. */
+	private final long flushInterval;
+
+	/** The timer that writes pending changes at the end of the flush interval. */
+	private final Timer flushTimer = new Timer("Sone Plugin Store Flusher", true);
+
+	/** Whether a write of pending changes has been scheduled. */
+	/* synchronize access on this. */
+	private boolean flushScheduled;
+
+	/** Whether the plugin store contains values that have not been written. */
+	/* synchronize access on this. */
+	private boolean dirty;
+
+	/** The time of the last write (in milliseconds since Jan 1, 1970 UTC). */
+	/* synchronize access on this. */
+	private long lastWriteTime;
+
+	/** The number of changed values. */
+	/* synchronize access on this. */
+	private long changeCount;
+
+	/** The number of writes of the plugin store. */
+	/* synchronize access on this. */
+	private long writeCount;
+
+	/** The total time spent writing the plugin store (in nanoseconds). */
+	/* synchronize access on this. */
+	private long writeTime;
+
 	/**
-	 * Creates a new configuration backend based on a plugin store.
+	 * Creates a new configuration backend based on a plugin store that is
+	 * written at most once per second when values are changed.
 	 *
 	 * @param pluginRespirator
 	 *            The plugin respirator
@@ -54,18 +95,89 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 *             if the plugin store is not available
 	 */
 	public PluginStoreConfigurationBackend(PluginRespirator pluginRespirator) throws DatabaseDisabledException {
+		this(pluginRespirator, 1000);
+	}
+
+	/**
+	 * Creates a new configuration backend based on a plugin store.
+	 *
+	 * @param pluginRespirator
+	 *            The plugin respirator
+	 * @param flushInterval
+	 *            The minimum time between two writes caused by changed values
+	 *            (in milliseconds); {@code 0} to write the store on every
+	 *            change
+	 * @throws DatabaseDisabledException
+	 *             if the plugin store is not available
+	 */
+	public PluginStoreConfigurationBackend(PluginRespirator pluginRespirator, long flushInterval) throws DatabaseDisabledException {
 		this.pluginRespirator = pluginRespirator;
 		this.pluginStore = pluginRespirator.getStore();
+		this.flushInterval = flushInterval;
 		if (this.pluginStore == null) {
 			throw new DatabaseDisabledException();
 		}
 	}
 
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of values that have been changed.
+	 *
+	 * @return The number of changed values
+	 */
+	public synchronized long getChangeCount() {
+		return changeCount;
+	}
+
+	/**
+	 * Returns the number of times the plugin store has been written.
+	 *
+	 * @return The number of writes
+	 */
+	public synchronized long getWriteCount() {
+		return writeCount;
+	}
+
+	/**
+	 * Returns the total time spent writing the plugin store.
+	 *
+	 * @return The total write time (in milliseconds)
+	 */
+	public synchronized long getWriteTime() {
+		return writeTime / 1000000;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Writes all pending changes and stops the timer that writes pending
+	 * changes. Changes after this method has been called are only written
+	 * when {@link #save()} is called, or when the flush interval has passed
+	 * and another change is made.
+	 *
+	 * @throws ConfigurationException
+	 *             if the plugin store can not be written
+	 */
+	public synchronized void stop() throws ConfigurationException {
+		flushTimer.cancel();
+		flushScheduled = false;
+		save();
+	}
+
+	//
+	// INTERFACE ExtendedConfigurationBackend
+	//
+
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String getValue(String attribute) throws ConfigurationException {
+	public synchronized String getValue(String attribute) throws ConfigurationException {
 		if (!pluginStore.strings.containsKey(attribute)) {
 			throw new AttributeNotFoundException(attribute);
 		}
@@ -76,16 +188,16 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void putValue(String attribute, String value) throws ConfigurationException {
+	public synchronized void putValue(String attribute, String value) throws ConfigurationException {
 		pluginStore.strings.put(attribute, value);
-		save();
+		valueChanged();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Boolean getBooleanValue(String attribute) throws ConfigurationException {
+	public synchronized Boolean getBooleanValue(String attribute) throws ConfigurationException {
 		if (!pluginStore.booleans.containsKey(attribute)) {
 			throw new AttributeNotFoundException(attribute);
 		}
@@ -96,16 +208,16 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setBooleanValue(String attribute, Boolean value) throws ConfigurationException {
+	public synchronized void setBooleanValue(String attribute, Boolean value) throws ConfigurationException {
 		pluginStore.booleans.put(attribute, value);
-		save();
+		valueChanged();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Double getDoubleValue(String attribute) throws ConfigurationException {
+	public synchronized Double getDoubleValue(String attribute) throws ConfigurationException {
 		if (!pluginStore.strings.containsKey(attribute)) {
 			throw new AttributeNotFoundException(attribute);
 		}
@@ -124,16 +236,16 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setDoubleValue(String attribute, Double value) throws ConfigurationException {
+	public synchronized void setDoubleValue(String attribute, Double value) throws ConfigurationException {
 		pluginStore.strings.put(attribute, String.valueOf(value));
-		save();
+		valueChanged();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Integer getIntegerValue(String attribute) throws ConfigurationException {
+	public synchronized Integer getIntegerValue(String attribute) throws ConfigurationException {
 		if (!pluginStore.integers.containsKey(attribute)) {
 			throw new AttributeNotFoundException(attribute);
 		}
@@ -144,16 +256,16 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setIntegerValue(String attribute, Integer value) throws ConfigurationException {
+	public synchronized void setIntegerValue(String attribute, Integer value) throws ConfigurationException {
 		pluginStore.integers.put(attribute, value);
-		save();
+		valueChanged();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public Long getLongValue(String attribute) throws ConfigurationException {
+	public synchronized Long getLongValue(String attribute) throws ConfigurationException {
 		if (!pluginStore.longs.containsKey(attribute)) {
 			throw new AttributeNotFoundException(attribute);
 		}
@@ -164,21 +276,85 @@ public class PluginStoreConfigurationBackend implements ExtendedConfigurationBac
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void setLongValue(String attribute, Long value) throws ConfigurationException {
+	public synchronized void setLongValue(String attribute, Long value) throws ConfigurationException {
 		pluginStore.longs.put(attribute, value);
-		save();
+		valueChanged();
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void save() throws ConfigurationException {
+	public synchronized void save() throws ConfigurationException {
+		if (!dirty) {
+			return;
+		}
+		long startTime = System.nanoTime();
 		try {
 			pluginRespirator.putStore(pluginStore);
 		} catch (DatabaseDisabledException dde1) {
 			throw new ConfigurationException("Could not store plugin store, database is disabled.", dde1);
 		}
+		long duration = System.nanoTime() - startTime;
+		dirty = false;
+		lastWriteTime = System.currentTimeMillis();
+		++writeCount;
+		writeTime += duration;
+		logger.log(Level.FINEST, "Wrote plugin store in %d ms, %d changes in %d writes so far.", new Object[] { duration / 1000000, changeCount, writeCount });
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Marks the plugin store as dirty and writes it if the last write is
+	 * older than the flush interval. Otherwise a write is scheduled for the
+	 * end of the flush interval.
+	 *
+	 * @throws ConfigurationException
+	 *             if the plugin store can not be written
+	 */
+	private void valueChanged() throws ConfigurationException {
+		dirty = true;
+		++changeCount;
+		long sinceLastWrite = System.currentTimeMillis() - lastWriteTime;
+		if (sinceLastWrite >= flushInterval) {
+			save();
+		} else if (!flushScheduled) {
+			scheduleFlush(flushInterval - sinceLastWrite);
+		}
+	}
+
+	/**
+	 * Schedules a write of the pending changes.
+	 *
+	 * @param delay
+	 *            The delay after which to write the pending changes (in
+	 *            milliseconds)
+	 */
+	private void scheduleFlush(long delay) {
+		try {
+			flushTimer.schedule(new TimerTask() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					synchronized (PluginStoreConfigurationBackend.this) {
+						flushScheduled = false;
+						try {
+							save();
+						} catch (ConfigurationException ce1) {
+							logger.log(Level.WARNING, "Could not write plugin store!", ce1);
+						}
+					}
+				}
+
+			}, delay);
+			flushScheduled = true;
+		} catch (IllegalStateException ise1) {
+			/* timer has been stopped, changes are written on save(). */
+		}
 	}
 
 }
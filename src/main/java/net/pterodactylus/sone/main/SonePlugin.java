@@ -98,6 +98,9 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 	/** The identity manager. */
 	private IdentityManager identityManager;
 
+	/** The plugin store configuration backend, if one is used. */
+	private PluginStoreConfigurationBackend pluginStoreConfigurationBackend;
+
 	//
 	// ACCESSORS
 	//
@@ -129,6 +132,16 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 		return l10n;
 	}
 
+	/**
+	 * Returns the plugin store configuration backend.
+	 *
+	 * @return The plugin store configuration backend, or {@code null} if the
+	 *         configuration is not based on the plugin store
+	 */
+	public PluginStoreConfigurationBackend getPluginStoreConfigurationBackend() {
+		return pluginStoreConfigurationBackend;
+	}
+
 	//
 	// FREDPLUGIN METHODS
 	//
@@ -158,7 +171,8 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 				logger.log(Level.SEVERE, "Could not create configuration file, using Plugin Store!", ce2);
 			}
 			try {
-				oldConfiguration = new Configuration(new PluginStoreConfigurationBackend(pluginRespirator));
+				pluginStoreConfigurationBackend = new PluginStoreConfigurationBackend(pluginRespirator);
+				oldConfiguration = new Configuration(pluginStoreConfigurationBackend);
 				logger.log(Level.INFO, "Plugin store loaded.");
 			} catch (DatabaseDisabledException dde1) {
 				logger.log(Level.SEVERE, "Could not load any configuration, using empty configuration!");
@@ -192,6 +206,7 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 			if ((newConfiguration != null) && (oldConfiguration != newConfiguration)) {
 				logger.log(Level.INFO, "Setting configuration to file-based configuration.");
 				core.setConfiguration(newConfiguration);
+				stopPluginStoreConfigurationBackend();
 			}
 			webInterface.start();
 			webInterface.setFirstStart(firstStart);
@@ -224,6 +239,9 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 
 			/* stop the identity manager. */
 			identityManager.stop();
+
+			/* write pending changes of the plugin store. */
+			stopPluginStoreConfigurationBackend();
 		} catch (Throwable t1) {
 			logger.log(Level.SEVERE, "Error while shutting down!", t1);
 		} finally {
@@ -232,6 +250,25 @@ public class SonePlugin implements FredPlugin, FredPluginL10n, FredPluginBaseL10
 		}
 	}
 
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Writes the pending changes of the plugin store configuration backend,
+	 * if one is used, and stops its timer.
+	 */
+	private void stopPluginStoreConfigurationBackend() {
+		if (pluginStoreConfigurationBackend == null) {
+			return;
+		}
+		try {
+			pluginStoreConfigurationBackend.stop();
+		} catch (ConfigurationException ce1) {
+			logger.log(Level.WARNING, "Could not write plugin store!", ce1);
+		}
+	}
+
 	//
 	// INTERFACE FredPluginL10n
 	//
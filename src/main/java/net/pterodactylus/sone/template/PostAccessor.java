@@ -34,6 +34,8 @@ import net.pterodactylus.util.template.TemplateFactory;
  * <dl>
  * <dd>replies</dd>
  * <dt>All replies to this post, sorted by time, oldest first</dt>
+ * <dd>likeCount</dd>
+ * <dt>The number of Sones that like this post</dt>
  * </dl>
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
@@ -69,6 +71,8 @@ public class PostAccessor extends ReflectionAccessor {
 			return core.getReplies(post);
 		} else if (member.equals("likes")) {
 			return core.getLikes(post);
+		} else if (member.equals("likeCount")) {
+			return core.getLikeCount(post);
 		} else if (member.equals("liked")) {
 			Sone currentSone = (Sone) dataProvider.getData("currentSone");
 			return (currentSone != null) && (currentSone.isLikedPostId(post.getId()));
@@ -65,6 +65,8 @@ public class ReplyAccessor extends ReflectionAccessor {
 		Reply reply = (Reply) object;
 		if ("likes".equals(member)) {
 			return core.getLikes(reply);
+		} else if (member.equals("likeCount")) {
+			return core.getLikeCount(reply);
 		} else if (member.equals("liked")) {
 			Sone currentSone = (Sone) dataProvider.getData("currentSone");
 			return (currentSone != null) && (currentSone.isLikedReplyId(reply.getId()));
@@ -19,6 +19,7 @@ package net.pterodactylus.sone.template;
 
 import net.pterodactylus.sone.core.Core;
 import net.pterodactylus.sone.core.Core.SoneStatus;
+import net.pterodactylus.sone.core.SoneHealth;
 import net.pterodactylus.sone.data.Profile;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.freenet.wot.Trust;
@@ -39,6 +40,10 @@ import net.pterodactylus.util.template.ReflectionAccessor;
  * <dt>current</dt>
  * <dd>Will return {@code true} if the sone in question is the currently logged
  * in Sone.</dd>
+ * <dt>health</dt>
+ * <dd>Will return the {@link SoneHealth} of the Sone if fetching the Sone has
+ * ever failed or a downloaded Sone contained problems, {@code null}
+ * otherwise.</dd>
  * </dl>
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
@@ -90,6 +95,9 @@ public class SoneAccessor extends ReflectionAccessor {
 			return core.isNewSone(sone);
 		} else if (member.equals("locked")) {
 			return core.isLocked(sone);
+		} else if (member.equals("health")) {
+			SoneHealth soneHealth = core.getSoneHealth(sone);
+			return ((soneHealth != null) && (soneHealth.isFailed() || (soneHealth.getWarnings() > 0))) ? soneHealth : null;
 		} else if (member.equals("trust")) {
 			Sone currentSone = (Sone) dataProvider.getData("currentSone");
 			Trust trust = core.getTrust(currentSone, sone);
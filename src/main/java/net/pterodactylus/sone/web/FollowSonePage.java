@@ -53,8 +53,7 @@ public class FollowSonePage extends SoneTemplatePage {
 			String soneId = request.getHttpRequest().getPartAsStringFailsafe("sone", 44);
 			String returnPage = request.getHttpRequest().getPartAsStringFailsafe("returnPage", 256);
 			Sone currentSone = getCurrentSone(request.getToadletContext());
-			currentSone.addFriend(soneId);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().followSone(currentSone, soneId);
 			throw new RedirectException(returnPage);
 		}
 	}
@@ -17,8 +17,6 @@
 
 package net.pterodactylus.sone.web;
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
 import net.pterodactylus.sone.data.Post;
@@ -58,22 +56,7 @@ public class IndexPage extends SoneTemplatePage {
 	protected void processTemplate(Request request, DataProvider dataProvider) throws RedirectException {
 		super.processTemplate(request, dataProvider);
 		Sone currentSone = getCurrentSone(request.getToadletContext());
-		List<Post> allPosts = new ArrayList<Post>();
-		allPosts.addAll(currentSone.getPosts());
-		for (String friendSoneId : currentSone.getFriends()) {
-			if (!webInterface.getCore().hasSone(friendSoneId)) {
-				continue;
-			}
-			allPosts.addAll(webInterface.getCore().getSone(friendSoneId).getPosts());
-		}
-		for (Sone sone : webInterface.getCore().getSones()) {
-			for (Post post : sone.getPosts()) {
-				if (currentSone.equals(post.getRecipient()) && !allPosts.contains(post)) {
-					allPosts.add(post);
-				}
-			}
-		}
-		Collections.sort(allPosts, Post.TIME_COMPARATOR);
+		List<Post> allPosts = webInterface.getCore().getTimeline(currentSone);
 		Pagination<Post> pagination = new Pagination<Post>(allPosts, 25).setPage(Numbers.safeParseInteger(request.getHttpRequest().getParam("page"), 0));
 		dataProvider.set("pagination", pagination);
 		dataProvider.set("posts", pagination.getItems());
@@ -58,9 +58,9 @@ public class LikePage extends SoneTemplatePage {
 			String returnPage = request.getHttpRequest().getPartAsStringFailsafe("returnPage", 256);
 			Sone currentSone = getCurrentSone(request.getToadletContext());
 			if ("post".equals(type)) {
-				currentSone.addLikedPostId(id);
+				webInterface.getCore().likePost(currentSone, id);
 			} else if ("reply".equals(type)) {
-				currentSone.addLikedReplyId(id);
+				webInterface.getCore().likeReply(currentSone, id);
 			}
 			throw new RedirectException(returnPage);
 		}
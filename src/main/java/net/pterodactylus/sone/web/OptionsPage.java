@@ -18,6 +18,7 @@
 package net.pterodactylus.sone.web;
 
 import net.pterodactylus.sone.core.Options;
+import net.pterodactylus.sone.core.Options.Option;
 import net.pterodactylus.sone.web.page.Page.Request.Method;
 import net.pterodactylus.util.number.Numbers;
 import net.pterodactylus.util.template.DataProvider;
@@ -56,6 +57,8 @@ public class OptionsPage extends SoneTemplatePage {
 		if (request.getMethod() == Method.POST) {
 			Integer insertionDelay = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("insertion-delay", 16));
 			options.getIntegerOption("InsertionDelay").set(insertionDelay);
+			setIntegerOption(options.getIntegerOption("DownloadThreads"), request.getHttpRequest().getPartAsStringFailsafe("download-threads", 16), 1);
+			setIntegerOption(options.getIntegerOption("MaximumSoneSize"), request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-size", 16), 1);
 			Integer positiveTrust = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("positive-trust", 3), options.getIntegerOption("PositiveTrust").getReal());
 			options.getIntegerOption("PositiveTrust").set(positiveTrust);
 			Integer negativeTrust = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("negative-trust", 3), options.getIntegerOption("NegativeTrust").getReal());
@@ -67,6 +70,8 @@ public class OptionsPage extends SoneTemplatePage {
 			options.getStringOption("TrustComment").set(trustComment);
 			boolean soneRescueMode = Boolean.parseBoolean(request.getHttpRequest().getPartAsStringFailsafe("sone-rescue-mode", 5));
 			options.getBooleanOption("SoneRescueMode").set(soneRescueMode);
+			setIntegerOption(options.getIntegerOption("SoneRescueDepth"), request.getHttpRequest().getPartAsStringFailsafe("sone-rescue-depth", 16), 0);
+			setIntegerOption(options.getIntegerOption("SoneRescueIdleEditions"), request.getHttpRequest().getPartAsStringFailsafe("sone-rescue-idle-editions", 16), 0);
 			boolean clearOnNextRestart = Boolean.parseBoolean(request.getHttpRequest().getPartAsStringFailsafe("clear-on-next-restart", 5));
 			options.getBooleanOption("ClearOnNextRestart").set(clearOnNextRestart);
 			boolean reallyClearOnNextRestart = Boolean.parseBoolean(request.getHttpRequest().getPartAsStringFailsafe("really-clear-on-next-restart", 5));
@@ -75,12 +80,43 @@ public class OptionsPage extends SoneTemplatePage {
 			throw new RedirectException(getPath());
 		}
 		dataProvider.set("insertion-delay", options.getIntegerOption("InsertionDelay").get());
+		dataProvider.set("download-threads", options.getIntegerOption("DownloadThreads").get());
+		dataProvider.set("maximum-sone-size", options.getIntegerOption("MaximumSoneSize").get());
 		dataProvider.set("positive-trust", options.getIntegerOption("PositiveTrust").get());
 		dataProvider.set("negative-trust", options.getIntegerOption("NegativeTrust").get());
 		dataProvider.set("trust-comment", options.getStringOption("TrustComment").get());
 		dataProvider.set("sone-rescue-mode", options.getBooleanOption("SoneRescueMode").get());
+		dataProvider.set("sone-rescue-depth", options.getIntegerOption("SoneRescueDepth").get());
+		dataProvider.set("sone-rescue-idle-editions", options.getIntegerOption("SoneRescueIdleEditions").get());
 		dataProvider.set("clear-on-next-restart", options.getBooleanOption("ClearOnNextRestart").get());
 		dataProvider.set("really-clear-on-next-restart", options.getBooleanOption("ReallyClearOnNextRestart").get());
+		dataProvider.set("plugin-store", webInterface.getPluginStoreConfigurationBackend());
+		dataProvider.set("oversized-sones", webInterface.getCore().getOversizedSoneCount());
+		dataProvider.set("limit-exceeded-sones", webInterface.getCore().getLimitExceededSoneCount());
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Sets the given option to the given value. An empty or unparseable value
+	 * resets the option to its default; a value that is smaller than the given
+	 * minimum leaves the option unchanged.
+	 *
+	 * @param option
+	 *            The option to set
+	 * @param value
+	 *            The value entered by the user
+	 * @param minimum
+	 *            The smallest valid value of the option
+	 */
+	private static void setIntegerOption(Option<Integer> option, String value, int minimum) {
+		Integer integerValue = Numbers.safeParseInteger(value);
+		if ((integerValue != null) && (integerValue < minimum)) {
+			return;
+		}
+		option.set(integerValue);
 	}
 
 }
@@ -53,8 +53,7 @@ public class UnfollowSonePage extends SoneTemplatePage {
 			String soneId = request.getHttpRequest().getPartAsStringFailsafe("sone", 44);
 			String returnPage = request.getHttpRequest().getPartAsStringFailsafe("returnPage", 256);
 			Sone currentSone = getCurrentSone(request.getToadletContext());
-			currentSone.removeFriend(soneId);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().unfollowSone(currentSone, soneId);
 			throw new RedirectException(returnPage);
 		}
 	}
@@ -40,6 +40,7 @@ import net.pterodactylus.sone.data.Post;
 import net.pterodactylus.sone.data.Reply;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.freenet.L10nFilter;
+import net.pterodactylus.sone.freenet.PluginStoreConfigurationBackend;
 import net.pterodactylus.sone.freenet.wot.Identity;
 import net.pterodactylus.sone.freenet.wot.Trust;
 import net.pterodactylus.sone.main.SonePlugin;
@@ -223,6 +224,16 @@ public class WebInterface implements CoreListener {
 		return sonePlugin.core();
 	}
 
+	/**
+	 * Returns the plugin store configuration backend of the Sone plugin.
+	 *
+	 * @return The plugin store configuration backend, or {@code null} if the
+	 *         configuration is not based on the plugin store
+	 */
+	public PluginStoreConfigurationBackend getPluginStoreConfigurationBackend() {
+		return sonePlugin.getPluginStoreConfigurationBackend();
+	}
+
 	/**
 	 * Returns the current session, creating a new session if there is no
 	 * current session.
@@ -51,8 +51,7 @@ public class FollowSoneAjaxPage extends JsonPage {
 		if (currentSone == null) {
 			return createErrorJsonObject("auth-required");
 		}
-		currentSone.addFriend(soneId);
-		webInterface.getCore().saveSone(currentSone);
+		webInterface.getCore().followSone(currentSone, soneId);
 		return createSuccessJsonObject();
 	}
 
@@ -54,11 +54,9 @@ public class LikeAjaxPage extends JsonPage {
 			return createErrorJsonObject("auth-required");
 		}
 		if ("post".equals(type)) {
-			currentSone.addLikedPostId(id);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().likePost(currentSone, id);
 		} else if ("reply".equals(type)) {
-			currentSone.addLikedReplyId(id);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().likeReply(currentSone, id);
 		} else {
 			return createErrorJsonObject("invalid-type");
 		}
@@ -51,8 +51,7 @@ public class UnfollowSoneAjaxPage extends JsonPage {
 		if (currentSone == null) {
 			return createErrorJsonObject("auth-required");
 		}
-		currentSone.removeFriend(soneId);
-		webInterface.getCore().saveSone(currentSone);
+		webInterface.getCore().unfollowSone(currentSone, soneId);
 		return createSuccessJsonObject();
 	}
 
@@ -54,11 +54,9 @@ public class UnlikeAjaxPage extends JsonPage {
 			return createErrorJsonObject("auth-required");
 		}
 		if ("post".equals(type)) {
-			currentSone.removeLikedPostId(id);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().unlikePost(currentSone, id);
 		} else if ("reply".equals(type)) {
-			currentSone.removeLikedReplyId(id);
-			webInterface.getCore().saveSone(currentSone);
+			webInterface.getCore().unlikeReply(currentSone, id);
 		} else {
 			return createErrorJsonObject("invalid-type");
 		}
@@ -0,0 +1,195 @@
+/*
+ * FreenetSone - SoneParserBenchmark.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Reply;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.freenet.wot.DefaultIdentity;
+import net.pterodactylus.util.xml.SimpleXML;
+import net.pterodactylus.util.xml.XML;
+
+import org.w3c.dom.Document;
+
+/**
+ * Compares the time the {@link SoneParser} needs to parse a Sone with the
+ * time the former DOM-based parsing using {@link SimpleXML} needed for the
+ * same Sone. The benchmark is not run as part of the tests; run its
+ * {@link #main(String[])} method with the test classpath instead.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneParserBenchmark {
+
+	/** The ID of the parsed Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The number of posts of the parsed Sone. */
+	private static final int POSTS = 2000;
+
+	/** The number of replies of the parsed Sone. */
+	private static final int REPLIES = 5000;
+
+	/** The number of parses before the time is measured. */
+	private static final int WARMUP_ROUNDS = 50;
+
+	/** The number of parses whose time is measured. */
+	private static final int MEASURED_ROUNDS = 200;
+
+	/**
+	 * Runs the benchmark and prints the average time per parse of both
+	 * parsers.
+	 *
+	 * @param arguments
+	 *            The command-line arguments (ignored)
+	 * @throws Exception
+	 *             if a Sone can not be parsed
+	 */
+	public static void main(String... arguments) throws Exception {
+		byte[] soneXml = createSoneXml();
+		Sone originalSone = new Sone(SONE_ID).setIdentity(new DefaultIdentity(null, SONE_ID, "Benchmark", null));
+		SoneParser soneParser = new SoneParser();
+		System.out.println("Sone size: " + soneXml.length + " bytes, " + POSTS + " posts, " + REPLIES + " replies.");
+		for (int round = 0; round < WARMUP_ROUNDS; ++round) {
+			soneParser.parseSone(originalSone, new ByteArrayInputStream(soneXml), null);
+			parseDocument(originalSone, soneXml);
+		}
+		long domTime = 0;
+		long staxTime = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; ++round) {
+			long startTime = System.nanoTime();
+			parseDocument(originalSone, soneXml);
+			domTime += System.nanoTime() - startTime;
+			startTime = System.nanoTime();
+			soneParser.parseSone(originalSone, new ByteArrayInputStream(soneXml), null);
+			staxTime += System.nanoTime() - startTime;
+		}
+		System.out.println(String.format("DOM/SimpleXML: %.2f ms per Sone", domTime / (MEASURED_ROUNDS * 1000000.0)));
+		System.out.println(String.format("SoneParser:    %.2f ms per Sone", staxTime / (MEASURED_ROUNDS * 1000000.0)));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates the XML of a Sone with {@link #POSTS} posts and {@link #REPLIES}
+	 * replies, each of which is liked as well.
+	 *
+	 * @return The XML of the Sone
+	 * @throws UnsupportedEncodingException
+	 *             if UTF-8 is not supported
+	 */
+	private static byte[] createSoneXml() throws UnsupportedEncodingException {
+		StringBuilder soneXml = new StringBuilder();
+		soneXml.append("<?xml version=\"1.0\" encoding=\"utf-8\" ?><sone>");
+		soneXml.append("<time>").append(System.currentTimeMillis()).append("</time>");
+		soneXml.append("<protocol-version>0</protocol-version>");
+		soneXml.append("<client><name>Sone</name><version>0.4.1</version></client>");
+		soneXml.append("<profile><first-name>First</first-name><last-name>Last</last-name>");
+		soneXml.append("<fields><field><field-name>Field</field-name><field-value>Value</field-value></field></fields></profile>");
+		String[] postIds = new String[POSTS];
+		soneXml.append("<posts>");
+		for (int post = 0; post < POSTS; ++post) {
+			postIds[post] = UUID.randomUUID().toString();
+			soneXml.append("<post><id>").append(postIds[post]).append("</id><time>").append(post).append("</time>");
+			soneXml.append("<text>Post number ").append(post).append(" with some text &amp; an entity.</text></post>");
+		}
+		soneXml.append("</posts>");
+		String[] replyIds = new String[REPLIES];
+		soneXml.append("<replies>");
+		for (int reply = 0; reply < REPLIES; ++reply) {
+			replyIds[reply] = UUID.randomUUID().toString();
+			soneXml.append("<reply><id>").append(replyIds[reply]).append("</id><post-id>").append(postIds[reply % POSTS]).append("</post-id>");
+			soneXml.append("<time>").append(reply).append("</time><text>Reply number ").append(reply).append(".</text></reply>");
+		}
+		soneXml.append("</replies>");
+		soneXml.append("<post-likes>");
+		for (String postId : postIds) {
+			soneXml.append("<post-like>").append(postId).append("</post-like>");
+		}
+		soneXml.append("</post-likes>");
+		soneXml.append("<reply-likes>");
+		for (String replyId : replyIds) {
+			soneXml.append("<reply-like>").append(replyId).append("</reply-like>");
+		}
+		soneXml.append("</reply-likes>");
+		soneXml.append("</sone>");
+		return soneXml.toString().getBytes("UTF-8");
+	}
+
+	/**
+	 * Parses the given XML the way Sones were parsed before the
+	 * {@link SoneParser} was used: the XML is transformed into a DOM document
+	 * which is then walked using {@link SimpleXML}. The checks of the values
+	 * are left out.
+	 *
+	 * @param originalSone
+	 *            The Sone to parse
+	 * @param soneXml
+	 *            The XML of the Sone
+	 * @return The parsed Sone
+	 */
+	private static Sone parseDocument(Sone originalSone, byte[] soneXml) {
+		Document document = XML.transformToDocument(new ByteArrayInputStream(soneXml));
+		SimpleXML soneSimpleXml = SimpleXML.fromDocument(document);
+		Sone sone = new Sone(originalSone.getId()).setIdentity(originalSone.getIdentity());
+		sone.setTime(Long.parseLong(soneSimpleXml.getValue("time", null)));
+
+		SimpleXML profileXml = soneSimpleXml.getNode("profile");
+		Profile profile = new Profile().setFirstName(profileXml.getValue("first-name", null)).setMiddleName(profileXml.getValue("middle-name", null)).setLastName(profileXml.getValue("last-name", null));
+		for (SimpleXML fieldXml : profileXml.getNode("fields").getNodes("field")) {
+			profile.addField(fieldXml.getValue("field-name", null)).setValue(fieldXml.getValue("field-value", null));
+		}
+
+		Set<Post> posts = new HashSet<Post>();
+		for (SimpleXML postXml : soneSimpleXml.getNode("posts").getNodes("post")) {
+			posts.add(new Post(postXml.getValue("id", null), sone, Long.parseLong(postXml.getValue("time", null)), postXml.getValue("text", null)));
+		}
+
+		Set<Reply> replies = new HashSet<Reply>();
+		for (SimpleXML replyXml : soneSimpleXml.getNode("replies").getNodes("reply")) {
+			replies.add(new Reply(replyXml.getValue("id", null), sone, new Post(replyXml.getValue("post-id", null)), Long.parseLong(replyXml.getValue("time", null)), replyXml.getValue("text", null)));
+		}
+
+		Set<String> likedPostIds = new HashSet<String>();
+		for (SimpleXML likedPostIdXml : soneSimpleXml.getNode("post-likes").getNodes("post-like")) {
+			likedPostIds.add(likedPostIdXml.getValue());
+		}
+
+		Set<String> likedReplyIds = new HashSet<String>();
+		for (SimpleXML likedReplyIdXml : soneSimpleXml.getNode("reply-likes").getNodes("reply-like")) {
+			likedReplyIds.add(likedReplyIdXml.getValue());
+		}
+
+		sone.setProfile(profile);
+		sone.setPosts(posts);
+		sone.setReplies(replies);
+		sone.setLikePostIds(likedPostIds);
+		sone.setLikeReplyIds(likedReplyIds);
+		return sone;
+	}
+
+}
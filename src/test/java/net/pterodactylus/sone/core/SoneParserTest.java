@@ -0,0 +1,190 @@
+/*
+ * FreenetSone - SoneParserTest.java - Copyright © 2010 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.core.SoneException.Type;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.freenet.wot.DefaultIdentity;
+
+/**
+ * Tests the limits and failure paths of the {@link SoneParser}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneParserTest extends TestCase {
+
+	/** The ID of the parsed Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The parser to test. */
+	private SoneParser soneParser;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		soneParser = new SoneParser();
+	}
+
+	//
+	// TESTS
+	//
+
+	/**
+	 * Tests that a valid Sone is parsed.
+	 *
+	 * @throws Exception
+	 *             if an error occurs
+	 */
+	public void testValidSone() throws Exception {
+		Sone sone = parseSone(createSoneXml("<post-likes><post-like>like</post-like></post-likes>"));
+		assertEquals(1234, sone.getTime());
+		assertEquals("First", sone.getProfile().getFirstName());
+		assertEquals(1, sone.getLikedPostIds().size());
+	}
+
+	/**
+	 * Tests that a Sone whose elements are nested deeper than
+	 * {@link SoneParser#MAXIMUM_DEPTH} levels is rejected.
+	 */
+	public void testNestingTooDeep() {
+		StringBuilder nestedElements = new StringBuilder();
+		for (int depth = 0; depth < SoneParser.MAXIMUM_DEPTH; ++depth) {
+			nestedElements.append("<nested>");
+		}
+		for (int depth = 0; depth < SoneParser.MAXIMUM_DEPTH; ++depth) {
+			nestedElements.append("</nested>");
+		}
+		assertRejected(createSoneXml(nestedElements.toString()), Type.LIMITS_EXCEEDED);
+		assertEquals(1, soneParser.getLimitExceededCount());
+	}
+
+	/**
+	 * Tests that a Sone with more than {@link SoneParser#MAXIMUM_ELEMENTS}
+	 * elements is rejected.
+	 */
+	public void testTooManyElements() {
+		StringBuilder likes = new StringBuilder("<post-likes>");
+		for (int element = 0; element < SoneParser.MAXIMUM_ELEMENTS; ++element) {
+			likes.append("<post-like>like</post-like>");
+		}
+		likes.append("</post-likes>");
+		assertRejected(createSoneXml(likes.toString()), Type.LIMITS_EXCEEDED);
+		assertEquals(1, soneParser.getLimitExceededCount());
+	}
+
+	/**
+	 * Tests that a Sone containing a text longer than
+	 * {@link SoneParser#MAXIMUM_TEXT_LENGTH} characters is rejected.
+	 */
+	public void testTextTooLong() {
+		StringBuilder text = new StringBuilder();
+		for (int character = 0; character <= SoneParser.MAXIMUM_TEXT_LENGTH; ++character) {
+			text.append('a');
+		}
+		assertRejected(createSoneXml("<post-likes><post-like>" + text + "</post-like></post-likes>"), Type.LIMITS_EXCEEDED);
+		assertEquals(1, soneParser.getLimitExceededCount());
+	}
+
+	/**
+	 * Tests that a Sone without a time is rejected.
+	 */
+	public void testMissingTime() {
+		assertRejected("<sone><profile><first-name>First</first-name></profile></sone>", Type.INVALID_SONE);
+		assertEquals(0, soneParser.getLimitExceededCount());
+	}
+
+	/**
+	 * Tests that a Sone without a profile is rejected.
+	 */
+	public void testMissingProfile() {
+		assertRejected("<sone><time>1234</time></sone>", Type.INVALID_SONE);
+		assertEquals(0, soneParser.getLimitExceededCount());
+	}
+
+	/**
+	 * Tests that entities declared in a DTD are not expanded.
+	 */
+	public void testInternalEntity() {
+		assertRejected("<?xml version=\"1.0\"?><!DOCTYPE sone [<!ENTITY name \"First\">]><sone><time>1234</time><profile><first-name>&name;</first-name></profile></sone>", Type.INVALID_SONE);
+	}
+
+	/**
+	 * Tests that external entities are not resolved.
+	 */
+	public void testExternalEntity() {
+		assertRejected("<?xml version=\"1.0\"?><!DOCTYPE sone [<!ENTITY name SYSTEM \"file:///etc/hostname\">]><sone><time>1234</time><profile><first-name>&name;</first-name></profile></sone>", Type.INVALID_SONE);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates the XML of a valid Sone that contains the given additional
+	 * elements.
+	 *
+	 * @param elements
+	 *            The additional elements of the Sone
+	 * @return The XML of the Sone
+	 */
+	private static String createSoneXml(String elements) {
+		return "<?xml version=\"1.0\" encoding=\"utf-8\" ?><sone><time>1234</time><profile><first-name>First</first-name></profile>" + elements + "</sone>";
+	}
+
+	/**
+	 * Parses the given XML.
+	 *
+	 * @param xml
+	 *            The XML of the Sone
+	 * @return The parsed Sone
+	 * @throws SoneException
+	 *             if the Sone can not be parsed
+	 */
+	private Sone parseSone(String xml) throws SoneException {
+		try {
+			Sone sone = new Sone(SONE_ID).setIdentity(new DefaultIdentity(null, SONE_ID, "Test", null));
+			return soneParser.parseSone(sone, new ByteArrayInputStream(xml.getBytes("UTF-8")), null);
+		} catch (UnsupportedEncodingException uee1) {
+			throw new RuntimeException("UTF-8 is not supported!", uee1);
+		}
+	}
+
+	/**
+	 * Asserts that the given XML is rejected with the given type.
+	 *
+	 * @param xml
+	 *            The XML of the Sone
+	 * @param type
+	 *            The expected type of the exception
+	 */
+	private void assertRejected(String xml, Type type) {
+		try {
+			parseSone(xml);
+			fail("Sone was not rejected.");
+		} catch (SoneException se1) {
+			assertEquals(type, se1.getType());
+		}
+	}
+
+}